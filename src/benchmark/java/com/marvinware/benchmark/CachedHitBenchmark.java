@@ -0,0 +1,62 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplier;
+import com.marvinware.CachingSupplierConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cached hit get() at 1, 4 and all available threads.  The TTL is long enough that every call is served from the
+ * cache, so this is the hot path cost: the state read, the staleness check and the stats recording.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachedHitBenchmark {
+
+    private CachingSupplier<Long> cachingSupplier;
+
+    @Setup
+    public void setup() {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return TimeUnit.HOURS.toMillis(1);
+            }
+        };
+        cachingSupplier = new CachingSupplier<>("cachedHit", config, System::nanoTime);
+        cachingSupplier.get();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long getOneThread() {
+        return cachingSupplier.get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long getFourThreads() {
+        return cachingSupplier.get();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Long getMaxThreads() {
+        return cachingSupplier.get();
+    }
+}
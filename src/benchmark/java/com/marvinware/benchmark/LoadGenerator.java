@@ -0,0 +1,289 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplierConfig;
+import com.marvinware.CachingSupplierManager;
+import com.marvinware.utils.LatencyHistogram;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static com.marvinware.CachingSupplierConfig.ConfigProperties;
+
+/**
+ * Open-loop load generator: drives a CachingSupplierManager at a fixed arrival rate against a synthetic slow
+ * supplier, and reports what clients would see for a given CachingSupplierConfig.
+ * <p>
+ * Requests are issued on a fixed schedule with getAsync(), whether or not earlier requests have completed, and each
+ * latency is measured from the request's intended start, so a stall shows up as the queueing delay it causes instead
+ * of being hidden by fewer requests (coordinated omission).  The report has latency percentiles, upstream calls per
+ * second, coalescing fan-out (requests served by each upstream call) and the staleness (age) of the results served.
+ * <p>
+ * Usage: LoadGenerator [rates,...] [supplierMillis] [durationSeconds] [config.properties ...]
+ * <p>
+ * Each properties file is read as ConfigProperties with no prefix, and every config is run at every rate, so configs
+ * can be compared before they are rolled out.  Without files, a plain TTL config and one with stale while revalidate
+ * are compared.
+ */
+public class LoadGenerator {
+
+    private static final String SUPPLIER_ID = "load";
+
+    private final String name;
+    private final CachingSupplierConfig config;
+    private final long supplierMillis;
+
+    /**
+     * Instantiates a new Load generator.
+     *
+     * @param name           the name of the config, used in the report
+     * @param config         the config under test
+     * @param supplierMillis how long each upstream call takes
+     */
+    public LoadGenerator(String name, CachingSupplierConfig config, long supplierMillis) {
+        this.name = name;
+        this.config = config;
+        this.supplierMillis = supplierMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] rates = (args.length > 0 ? args[0] : "100,1000,10000").split(",");
+        long supplierMillis = args.length > 1 ? Long.parseLong(args[1]) : 50L;
+        long durationSeconds = args.length > 2 ? Long.parseLong(args[2]) : 10L;
+
+        List<LoadGenerator> generators = new ArrayList<>();
+        if (args.length > 3) {
+            for (int i = 3; i < args.length; i++) {
+                generators.add(new LoadGenerator(args[i], load(args[i]), supplierMillis));
+            }
+        } else {
+            generators.add(new LoadGenerator("ttl=100", config(100L, 0L), supplierMillis));
+            generators.add(new LoadGenerator("ttl=100,swr=1000", config(100L, 1000L), supplierMillis));
+        }
+
+        System.out.println(Report.header());
+        for (String rate : rates) {
+            for (LoadGenerator generator : generators) {
+                System.out.println(generator.run(Integer.parseInt(rate.trim()), durationSeconds, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    private static CachingSupplierConfig load(String path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            properties.load(in);
+        }
+        return new ConfigProperties("", properties);
+    }
+
+    private static CachingSupplierConfig config(long cachedResultsTTL, long staleWhileRevalidateTime) {
+        return new ConfigProperties("", Map.of(
+                ConfigProperties.CachedResultsTTL, Long.toString(cachedResultsTTL),
+                ConfigProperties.MaxConcurrentRunningSuppliers, "10",
+                ConfigProperties.NewSupplierStaggerDelay, "10",
+                ConfigProperties.CacheCleanupThreadEnabled, "false",
+                ConfigProperties.StaleWhileRevalidateTime, Long.toString(staleWhileRevalidateTime)
+        ));
+    }
+
+    /**
+     * Run at a fixed arrival rate, then wait for the outstanding requests to complete.
+     *
+     * @param ratePerSecond the requests per second
+     * @param duration      how long to issue requests for
+     * @param unit          the unit of the duration
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for requests to complete
+     */
+    public Report run(int ratePerSecond, long duration, TimeUnit unit) throws InterruptedException {
+        SlowSupplier upstream = new SlowSupplier(supplierMillis);
+        CachingSupplierManager<Sample> manager = new CachingSupplierManager<>(config);
+        manager.registerSupplier(SUPPLIER_ID, upstream);
+
+        long requests = Math.max(1L, unit.toSeconds(duration) * ratePerSecond);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram staleness = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        AtomicLong maxLatency = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((int) Math.min(requests, Integer.MAX_VALUE));
+
+        long startNanos = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            long intendedStart = startNanos + i * intervalNanos;
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(wait);
+            }
+            manager.getAsync(SUPPLIER_ID).whenComplete((sample, e) -> {
+                long now = System.nanoTime();
+                long latencyNanos = now - intendedStart;
+                latency.record(latencyNanos);
+                maxLatency.accumulateAndGet(latencyNanos, Math::max);
+                if (e != null) {
+                    errors.increment();
+                } else {
+                    sample.served.increment();
+                    staleness.record(now - sample.fetchedNanos);
+                }
+                done.countDown();
+            });
+        }
+        long issueNanos = System.nanoTime() - startNanos;
+        done.await();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        LatencyHistogram fanOut = new LatencyHistogram();
+        for (Sample sample : upstream.samples) {
+            fanOut.record(sample.served.sum());
+        }
+        return new Report(name, ratePerSecond, requests / (issueNanos / 1e9), latency.snapshot(false),
+                maxLatency.get(), upstream.calls.get() / (elapsedNanos / 1e9), fanOut.snapshot(false),
+                (double) requests / Math.max(1L, upstream.calls.get()), staleness.snapshot(false), errors.sum());
+    }
+
+    /**
+     * Results of one run.  Latency and staleness are reported in milliseconds.
+     */
+    public static final class Report {
+        private final String name;
+        private final int targetRate;
+        private final double achievedRate;
+        private final LatencyHistogram.Snapshot latency;
+        private final long maxLatencyNanos;
+        private final double upstreamCallsPerSecond;
+        private final LatencyHistogram.Snapshot fanOut;
+        private final double meanFanOut;
+        private final LatencyHistogram.Snapshot staleness;
+        private final long errors;
+
+        private Report(String name, int targetRate, double achievedRate, LatencyHistogram.Snapshot latency,
+                       long maxLatencyNanos, double upstreamCallsPerSecond, LatencyHistogram.Snapshot fanOut,
+                       double meanFanOut, LatencyHistogram.Snapshot staleness, long errors) {
+            this.name = name;
+            this.targetRate = targetRate;
+            this.achievedRate = achievedRate;
+            this.latency = latency;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.upstreamCallsPerSecond = upstreamCallsPerSecond;
+            this.fanOut = fanOut;
+            this.meanFanOut = meanFanOut;
+            this.staleness = staleness;
+            this.errors = errors;
+        }
+
+        /**
+         * Gets the latency at a percentile.
+         *
+         * @param percentile the percentile, 0.0 to 100.0
+         * @return the latency in nanoseconds, from the intended start
+         */
+        public long getLatencyNanos(double percentile) {
+            // histogram values are bucket upper bounds, so never report more than the exact max
+            return Math.min(latency.getValueAtPercentile(percentile), maxLatencyNanos);
+        }
+
+        /**
+         * Gets upstream calls per second.
+         *
+         * @return the upstream calls per second
+         */
+        public double getUpstreamCallsPerSecond() {
+            return upstreamCallsPerSecond;
+        }
+
+        /**
+         * Gets mean fan out.
+         *
+         * @return the mean number of requests served by each upstream call
+         */
+        public double getMeanFanOut() {
+            return meanFanOut;
+        }
+
+        /**
+         * Gets the staleness at a percentile.
+         *
+         * @param percentile the percentile, 0.0 to 100.0
+         * @return the age in nanoseconds of the results served
+         */
+        public long getStalenessNanos(double percentile) {
+            return staleness.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * Gets errors.
+         *
+         * @return the number of requests that completed exceptionally
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        static String header() {
+            return String.format("%-24s %8s %9s %8s %8s %8s %8s %10s %9s %8s %8s %8s %8s %7s",
+                    "config", "rate", "achieved", "p50ms", "p99ms", "p999ms", "maxMs", "upstream/s",
+                    "fanOut", "fanP50", "fanP99", "staleP50", "staleP99", "errors");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %8d %9.0f %8.2f %8.2f %8.2f %8.2f %10.1f %9.1f %8d %8d %8.1f %8.1f %7d",
+                    name, targetRate, achievedRate, millis(getLatencyNanos(50.0)),
+                    millis(getLatencyNanos(99.0)), millis(getLatencyNanos(99.9)),
+                    millis(maxLatencyNanos), upstreamCallsPerSecond, meanFanOut, fanOut.getValueAtPercentile(50.0),
+                    fanOut.getValueAtPercentile(99.0), millis(staleness.getValueAtPercentile(50.0)),
+                    millis(staleness.getValueAtPercentile(99.0)), errors);
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    /**
+     * Result of one upstream call, counting the requests it served.
+     */
+    static final class Sample {
+        private final long fetchedNanos = System.nanoTime();
+        private final LongAdder served = new LongAdder();
+    }
+
+    /**
+     * Synthetic slow upstream that keeps every result it returned.
+     */
+    private static class SlowSupplier implements Supplier<Sample> {
+        private final long supplierMillis;
+        private final AtomicLong calls = new AtomicLong();
+        private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+
+        private SlowSupplier(long supplierMillis) {
+            this.supplierMillis = supplierMillis;
+        }
+
+        @Override
+        public Sample get() {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(supplierMillis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            Sample sample = new Sample();
+            samples.add(sample);
+            return sample;
+        }
+    }
+}
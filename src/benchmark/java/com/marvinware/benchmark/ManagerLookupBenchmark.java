@@ -0,0 +1,66 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplier;
+import com.marvinware.CachingSupplierConfig;
+import com.marvinware.CachingSupplierManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachingSupplierManager.get(id) lookup overhead: a cached hit through the manager against the same hit on a
+ * CachingSupplier held directly, with 1 to 10000 registered suppliers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManagerLookupBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int suppliers;
+
+    private CachingSupplierManager<Long> manager;
+    private CachingSupplier<Long> direct;
+    private String id;
+
+    @Setup
+    public void setup() {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return TimeUnit.HOURS.toMillis(1);
+            }
+        };
+        manager = new CachingSupplierManager<>(config);
+        for (int i = 0; i < suppliers; i++) {
+            manager.registerSupplier("supplier-" + i, System::nanoTime);
+        }
+        id = "supplier-" + (suppliers / 2);
+        manager.get(id);
+        direct = new CachingSupplier<>("direct", config, System::nanoTime);
+        direct.get();
+    }
+
+    @Benchmark
+    public Long managerGet() {
+        return manager.get(id);
+    }
+
+    @Benchmark
+    public Long directGet() {
+        return direct.get();
+    }
+}
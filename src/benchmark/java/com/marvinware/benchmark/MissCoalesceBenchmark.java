@@ -0,0 +1,85 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplier;
+import com.marvinware.CachingSupplierConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Miss and coalesce under contention: the TTL is 0, so every get() finds the result stale and either starts a fetch
+ * or joins the one in flight.  The upstream burns a fixed amount of CPU, and the tear down prints how many gets each
+ * upstream call served.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class MissCoalesceBenchmark {
+
+    @Param({"1", "4"})
+    public int maxConcurrentRunningSuppliers;
+
+    @Param({"1000"})
+    public long upstreamTokens;
+
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong gets = new AtomicLong();
+    private CachingSupplier<Long> cachingSupplier;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 0;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return maxConcurrentRunningSuppliers;
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return 0;
+            }
+        };
+        upstreamCalls.set(0L);
+        gets.set(0L);
+        cachingSupplier = new CachingSupplier<>("missCoalesce", config, () -> {
+            Blackhole.consumeCPU(upstreamTokens);
+            return upstreamCalls.incrementAndGet();
+        });
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        long calls = Math.max(1L, upstreamCalls.get());
+        System.out.printf("%n  upstream calls: %d, gets per upstream call: %.1f%n", calls, (double) gets.get() / calls);
+    }
+
+    @Benchmark
+    public Long get() {
+        gets.incrementAndGet();
+        return cachingSupplier.get();
+    }
+}
@@ -0,0 +1,102 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplierConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Reference copy of the original, monitor based CachingSupplier state handling: synchronized state transitions and
+ * synchronized stats.  Kept only so benchmarks can compare against it.
+ *
+ * @param <T> the type parameter
+ */
+class MonitorBaselineSupplier<T> implements Supplier<T> {
+    private final Supplier<T> supplier;
+    private final CachingSupplierConfig config;
+    private final Object statsLock = new Object();
+    private int supplierRunCount = 0;
+    private long previousFutureStartTime = 0L;
+    private long futureStartTS = 0L;
+    private long futureCompleteTS = 0L;
+    private State state = State.init;
+    private CompletableFuture<T> sharedFuture;
+    private long totalCnt = 0L;
+    private long totalGetTime = 0L;
+    private long maxGetTime = 0L;
+
+    MonitorBaselineSupplier(CachingSupplierConfig config, Supplier<T> supplier) {
+        this.config = config;
+        this.supplier = supplier;
+    }
+
+    @Override
+    public T get() {
+        long localStartTS = System.currentTimeMillis();
+        T result;
+        CompletableFuture<T> future;
+        boolean fetchNew;
+        synchronized (this) {
+            fetchNew = processCurrentState();
+            future = sharedFuture;
+        }
+        try {
+            if (fetchNew) {
+                result = supplier.get();
+                updateState(result);
+            } else {
+                result = future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        long getCallTime = System.currentTimeMillis() - localStartTS;
+        synchronized (statsLock) {
+            maxGetTime = Math.max(maxGetTime, getCallTime);
+            totalGetTime += getCallTime;
+            totalCnt++;
+        }
+        return result;
+    }
+
+    private boolean processCurrentState() {
+        long now = System.currentTimeMillis();
+        boolean newFuture;
+        boolean notAtMax = supplierRunCount < config.getMaxConcurrentRunningSuppliers();
+        boolean notInStagger = now - previousFutureStartTime >= config.getNewSupplierStaggerDelay();
+        switch (state) {
+            case init:
+                newFuture = true;
+                break;
+            case fetching:
+                newFuture = notAtMax && notInStagger;
+                break;
+            default:
+                newFuture = futureCompleteTS > 0L && now - futureCompleteTS > config.getCachedResultsTTL() && notAtMax && notInStagger;
+                break;
+        }
+        if (newFuture) {
+            supplierRunCount++;
+            state = State.fetching;
+            previousFutureStartTime = futureStartTS;
+            CompletableFuture<T> previous = sharedFuture;
+            sharedFuture = new CompletableFuture<>();
+            if (previous != null && !previous.isDone()) {
+                sharedFuture.thenAccept(previous::complete);
+            }
+            futureStartTS = now;
+            futureCompleteTS = 0L;
+        }
+        return newFuture;
+    }
+
+    private synchronized void updateState(T result) {
+        state = State.cached;
+        sharedFuture.complete(result);
+        futureCompleteTS = System.currentTimeMillis();
+        supplierRunCount--;
+    }
+
+    private enum State { init, fetching, cached }
+}
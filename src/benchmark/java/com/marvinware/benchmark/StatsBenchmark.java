@@ -0,0 +1,74 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplier;
+import com.marvinware.CachingSupplierConfig;
+import com.marvinware.utils.LatencyHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stats cost: recording a latency into the shared histogram, contended and not, and reading the stats back as a
+ * snapshot or as json.  Cache hits take about the same time, so the latency recorded is one fixed value, and the
+ * contended run has every thread incrementing the same bucket.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+
+    // a typical cache hit, in nanoseconds
+    private static final long HIT_LATENCY = 250L;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private CachingSupplier<Long> cachingSupplier;
+
+    @Setup
+    public void setup() {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return TimeUnit.HOURS.toMillis(1);
+            }
+        };
+        cachingSupplier = new CachingSupplier<>("stats", config, System::nanoTime);
+        for (int i = 0; i < 1000; i++) {
+            cachingSupplier.get();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordLatency() {
+        histogram.record(HIT_LATENCY);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void recordLatencyContended() {
+        histogram.record(HIT_LATENCY);
+    }
+
+    @Benchmark
+    public CachingSupplier.StatsSnapshot snapshot() {
+        return cachingSupplier.getStatsSnapshot(false);
+    }
+
+    @Benchmark
+    public String jsonStats() {
+        return cachingSupplier.getJsonStats(false);
+    }
+}
@@ -0,0 +1,169 @@
+package com.marvinware.benchmark;
+
+import com.marvinware.CachingSupplierConfig;
+import com.marvinware.CachingSupplierManager;
+import com.marvinware.utils.VirtualThreads;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.marvinware.CachingSupplierConfig.ConfigProperties;
+import static java.util.Map.entry;
+
+/**
+ * Compares blocking get() throughput and carrier pinning for many concurrent callers on platform threads and on
+ * virtual threads, against the original monitor based design.
+ * <p>
+ * Usage: VirtualThreadBenchmark [callers,...] [supplierMillis] [callsPerCaller] [maxPlatformThreads]
+ * <p>
+ * Virtual thread runs need Java 21+; on older JVMs they are reported as skipped.  Pinning is counted from
+ * jdk.VirtualThreadPinned JFR events.
+ */
+public class VirtualThreadBenchmark {
+
+    private static final String SUPPLIER_ID = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        String[] callerCounts = (args.length > 0 ? args[0] : "10000,100000").split(",");
+        long supplierMillis = args.length > 1 ? Long.parseLong(args[1]) : 50L;
+        int callsPerCaller = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int maxPlatformThreads = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+
+        System.out.println("Java " + Runtime.version() + ", virtual threads available: " + VirtualThreads.isAvailable());
+        System.out.printf("%-32s %10s %12s %14s %12s %10s%n",
+                "mode", "callers", "elapsedMs", "callsPerSec", "upstream", "pinned");
+
+        for (String callerCount : callerCounts) {
+            int callers = Integer.parseInt(callerCount.trim());
+            if (callers <= maxPlatformThreads) {
+                run("platform/CachingSupplier", callers, callsPerCaller, Thread::new,
+                        cachingSupplier(supplierMillis, false));
+                run("platform/monitorBaseline", callers, callsPerCaller, Thread::new,
+                        monitorBaseline(supplierMillis));
+            } else {
+                System.out.printf("%-32s %10d %12s%n", "platform/*", callers, "skipped (maxPlatformThreads)");
+            }
+            if (VirtualThreads.isAvailable()) {
+                run("virtual/CachingSupplier", callers, callsPerCaller, VirtualThreads.factory(),
+                        cachingSupplier(supplierMillis, true));
+                run("virtual/monitorBaseline", callers, callsPerCaller, VirtualThreads.factory(),
+                        monitorBaseline(supplierMillis));
+            } else {
+                System.out.printf("%-32s %10d %12s%n", "virtual/*", callers, "skipped (needs Java 21+)");
+            }
+        }
+    }
+
+    private static CachingSupplierConfig config(boolean virtualThreads) {
+        String prefix = "benchmark.";
+        return new ConfigProperties(prefix, Map.ofEntries(
+                entry(prefix + ConfigProperties.CachedResultsTTL, "100"),
+                entry(prefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(prefix + ConfigProperties.NewSupplierStaggerDelay, "100"),
+                entry(prefix + ConfigProperties.CacheCleanupThreadEnabled, "false"),
+                entry(prefix + ConfigProperties.PollingPeriodForCleanupThread, "10000"),
+                entry(prefix + ConfigProperties.VirtualThreadsEnabled, Boolean.toString(virtualThreads))
+        ));
+    }
+
+    private static Scenario cachingSupplier(long supplierMillis, boolean virtualThreads) {
+        CachingSupplierConfig config = config(virtualThreads);
+        CountingSupplier upstream = new CountingSupplier(supplierMillis);
+        CachingSupplierManager<Long> manager = new CachingSupplierManager<>(config);
+        manager.registerSupplier(SUPPLIER_ID, upstream);
+        return new Scenario(upstream, () -> manager.get(SUPPLIER_ID));
+    }
+
+    private static Scenario monitorBaseline(long supplierMillis) {
+        CountingSupplier upstream = new CountingSupplier(supplierMillis);
+        return new Scenario(upstream, new MonitorBaselineSupplier<>(config(false), upstream));
+    }
+
+    private static void run(String mode, int callers, int callsPerCaller, ThreadFactory threadFactory,
+                            Scenario scenario) throws InterruptedException {
+        // warm up the JIT with a full pass so the measured pass is not dominated by first-call costs
+        measure(callers, callsPerCaller, threadFactory, scenario);
+        scenario.upstream.calls.set(0L);
+
+        AtomicLong pinned = new AtomicLong();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+            recording.onEvent("jdk.VirtualThreadPinned", e -> pinned.incrementAndGet());
+            recording.startAsync();
+
+            long elapsedNanos = measure(callers, callsPerCaller, threadFactory, scenario);
+
+            // let the recording stream deliver the last events
+            Thread.sleep(1000);
+            long calls = (long) callers * callsPerCaller;
+            System.out.printf("%-32s %10d %12d %14.0f %12d %10d%n", mode, callers, elapsedNanos / 1_000_000L,
+                    calls / (elapsedNanos / 1e9), scenario.upstream.calls.get(), pinned.get());
+        }
+    }
+
+    private static long measure(int callers, int callsPerCaller, ThreadFactory threadFactory, Scenario scenario)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(callers);
+        for (int i = 0; i < callers; i++) {
+            threadFactory.newThread(() -> {
+                try {
+                    start.await();
+                    for (int c = 0; c < callsPerCaller; c++) {
+                        scenario.client.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * A caching client in front of a counting upstream.
+     */
+    private static class Scenario {
+        private final CountingSupplier upstream;
+        private final Supplier<Long> client;
+
+        private Scenario(CountingSupplier upstream, Supplier<Long> client) {
+            this.upstream = upstream;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Slow upstream that counts its invocations.
+     */
+    private static class CountingSupplier implements Supplier<Long> {
+        private final long supplierMillis;
+        private final AtomicLong calls = new AtomicLong();
+
+        private CountingSupplier(long supplierMillis) {
+            this.supplierMillis = supplierMillis;
+        }
+
+        @Override
+        public Long get() {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(supplierMillis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return System.currentTimeMillis();
+        }
+    }
+}
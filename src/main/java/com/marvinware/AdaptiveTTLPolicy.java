@@ -0,0 +1,94 @@
+package com.marvinware;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the cached results TTL of each new result from the cost of the supplier run that produced it and from how
+ * well the previous result was reused.
+ * <p>
+ * The configured cached results TTL is the TTL for an upstream answering in the reference latency.  The TTL is
+ * stretched in proportion as the (smoothed) supplier latency rises above the reference, and more so when the hit
+ * ratio since the last result was low, since each miss then costs a slow supplier call.  It shrinks toward the min
+ * as the upstream gets faster.  While the upstream looks overloaded, i.e. a supplier run failed or the concurrency
+ * limit has backed off, the max is used.  The TTL never leaves [min, max].
+ * <p>
+ * Called once per supplier run, never on the cache hit path.
+ */
+final class AdaptiveTTLPolicy {
+    static final String REASON_CONFIGURED = "configured";
+    static final String REASON_OVERLOADED = "overloaded";
+    static final String REASON_SLOW_UPSTREAM = "slowUpstream";
+    static final String REASON_FAST_UPSTREAM = "fastUpstream";
+
+    private static final double LATENCY_SMOOTHING = 0.3;
+    private static final double BAND = 0.1;
+
+    private final CachingSupplierConfig config;
+    private double smoothedLatencyNanos = 0.0;
+    private long lastHits = 0L;
+    private long lastTotal = 0L;
+    private boolean failedSinceLastResult = false;
+    private volatile String reason = REASON_CONFIGURED;
+
+    AdaptiveTTLPolicy(CachingSupplierConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Record a failed supplier run: the next result gets the max TTL.
+     */
+    synchronized void onFailure() {
+        failedSinceLastResult = true;
+    }
+
+    /**
+     * Next TTL.
+     *
+     * @param supplierNanos  the time the supplier run that produced the new result took
+     * @param hits           the running total of gets served from the cache or a shared future
+     * @param total          the running total of gets
+     * @param limitBackedOff the concurrency limit is below the configured max concurrent running suppliers
+     * @return the ttl for the new result, before jitter
+     */
+    synchronized long nextTTL(long supplierNanos, long hits, long total, boolean limitBackedOff) {
+        long ttl = config.getCachedResultsTTL();
+        long min = Math.min(config.getMinCachedResultsTTL(), ttl);
+        long max = Math.max(config.getMaxCachedResultsTTL(), ttl);
+
+        smoothedLatencyNanos = smoothedLatencyNanos == 0.0 ? supplierNanos :
+                smoothedLatencyNanos + (supplierNanos - smoothedLatencyNanos) * LATENCY_SMOOTHING;
+        long deltaHits = hits - lastHits;
+        long deltaTotal = total - lastTotal;
+        lastHits = hits;
+        lastTotal = total;
+        // a stats reset makes the deltas meaningless: assume the result was fully reused
+        double hitRatio = (deltaTotal <= 0L || deltaHits < 0L) ? 1.0 : Math.min(1.0, deltaHits / (double) deltaTotal);
+        boolean overloaded = failedSinceLastResult || limitBackedOff;
+        failedSinceLastResult = false;
+
+        if (overloaded) {
+            reason = REASON_OVERLOADED;
+            return max;
+        }
+        double referenceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, config.getAdaptiveTTLReferenceLatency()));
+        double factor = smoothedLatencyNanos / referenceNanos;
+        if (factor > 1.0 + BAND) {
+            reason = REASON_SLOW_UPSTREAM;
+            return Math.min(max, (long) (ttl * factor * (2.0 - hitRatio)));
+        } else if (factor < 1.0 - BAND) {
+            reason = REASON_FAST_UPSTREAM;
+            return Math.max(min, (long) (ttl * factor));
+        }
+        reason = REASON_CONFIGURED;
+        return ttl;
+    }
+
+    /**
+     * Gets the reason for the last TTL picked.
+     *
+     * @return the reason
+     */
+    String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,158 @@
+package com.marvinware;
+
+import com.marvinware.utils.CompletableChainableFutureWithTS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Reads and writes warm-start snapshots: each supplier's last result with the wall clock time it completed, so a
+ * restarted process can serve it at its original age.
+ * <p>
+ * The file is a header (magic, version, entry count) followed by, per entry, the supplier id, the completion time in
+ * epoch milliseconds and the serialized result, each length prefixed.  It is written to a temporary file and moved
+ * into place, so readers never see a partial snapshot, and read through a memory mapping.
+ */
+final class CacheSnapshotFile {
+    private static final System.Logger logger = System.getLogger(CacheSnapshotFile.class.getName());
+    private static final int MAGIC = 0x43534E50;
+    private static final int VERSION = 1;
+
+    private CacheSnapshotFile() { }
+
+    /**
+     * Write the last result of each supplier.  Suppliers without a result, and results that do not serialize, are
+     * left out.
+     *
+     * @param path       the file
+     * @param suppliers  the suppliers by id
+     * @param serializer the serializer
+     * @param <T>        the type of the cached results
+     * @return the number of results written
+     * @throws IOException if the file can not be written
+     */
+    static <T> int write(Path path, Map<String, CachingSupplier<T>> suppliers, SnapshotSerializer<T> serializer)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int count = 0;
+        for (Map.Entry<String, CachingSupplier<T>> entry : suppliers.entrySet()) {
+            CompletableChainableFutureWithTS<T> lastCompleted = entry.getValue().getLastCompleted();
+            if (lastCompleted == null) {
+                continue;
+            }
+            long completedAt = System.currentTimeMillis() - lastCompleted.getResultAge();
+            byte[] value;
+            try {
+                value = serializer.serialize(lastCompleted.getNow(null));
+            } catch (IOException | RuntimeException e) {
+                logger.log(System.Logger.Level.WARNING, "Snapshot skips CachingSupplier id: " + entry.getKey(), e);
+                continue;
+            }
+            byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeLong(completedAt);
+            out.writeInt(value.length);
+            out.write(value);
+            count++;
+        }
+
+        Path absolute = path.toAbsolutePath();
+        Path tmp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(count).flip();
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return count;
+    }
+
+    /**
+     * Seed registered suppliers that have not run yet with the results in the file.  Entries for ids that are not
+     * registered, that do not deserialize, or that are too old to be served are skipped.
+     *
+     * @param path       the file
+     * @param suppliers  the suppliers by id
+     * @param serializer the serializer
+     * @param <T>        the type of the cached results
+     * @return the number of suppliers seeded, 0 if there is no file
+     * @throws IOException if the file can not be read or is not a snapshot
+     */
+    static <T> int read(Path path, Map<String, CachingSupplier<T>> suppliers, SnapshotSerializer<T> serializer)
+            throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a CachingSupplier snapshot: " + path);
+            }
+            int count = buffer.getInt();
+            long now = System.currentTimeMillis();
+            int seeded = 0;
+            for (int i = 0; i < count; i++) {
+                String id = new String(readBytes(buffer), StandardCharsets.UTF_8);
+                long completedAt = buffer.getLong();
+                byte[] value = readBytes(buffer);
+                CachingSupplier<T> cachingSupplier = suppliers.get(id);
+                if (cachingSupplier == null) {
+                    continue;
+                }
+                try {
+                    if (cachingSupplier.seed(serializer.deserialize(value), now - completedAt)) {
+                        seeded++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.log(System.Logger.Level.WARNING, "Snapshot skips CachingSupplier id: " + id, e);
+                }
+            }
+            return seeded;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated CachingSupplier snapshot: " + path, e);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        // checked before allocating: a corrupt length must be rejected like any other truncated snapshot
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Snapshot entry length " + length + " with " + buffer.remaining() + " bytes left");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.marvinware;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The type Caching function.  A caching Decorator around a Function: each key gets the same single-flight, TTL,
+ * stagger and max concurrency semantics as a CachingSupplier.
+ * <p>
+ * Keys live in a ConcurrentHashMap of lightweight per-key CachingSuppliers that share one set of stats, so there is no
+ * monitor per entry and millions of keys are fine.  With the cache cleanup enabled, each cached result schedules the
+ * removal of its key on the scheduler's timer wheel for when it expires.  With a maximum size configured, a W-TinyLFU
+ * policy evicts keys beyond it.  A call racing with the removal of its key still gets a result, but may run the
+ * function once more than strictly needed.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class CachingFunction<K, V> implements Function<K, V> {
+
+    private final String functionId;
+    private final CachingSupplierConfig config;
+    private final Function<K, V> function;
+    private final CachingSupplier.Stats stats;
+    private final ConcurrentMap<K, WindowTinyLfuPolicy.Node<K, V>> cachingSuppliersByKey = new ConcurrentHashMap<>();
+    private final WindowTinyLfuPolicy<K, V> policy;
+    private final CachingScheduler scheduler;
+
+    /**
+     * Instantiates a new Caching function on the shared scheduler.
+     *
+     * @param functionId the function id
+     * @param config     the config
+     * @param function   the function
+     */
+    public CachingFunction(String functionId, CachingSupplierConfig config, Function<K, V> function) {
+        this(functionId, config, function, CachingScheduler.shared());
+    }
+
+    /**
+     * Instantiates a new Caching function.  Key expiry and background refreshes run on the scheduler, which is
+     * started if it is not already.  The function does not close it.
+     *
+     * @param functionId the function id
+     * @param config     the config
+     * @param function   the function
+     * @param scheduler  the scheduler
+     */
+    public CachingFunction(String functionId, CachingSupplierConfig config, Function<K, V> function,
+                           CachingScheduler scheduler) {
+        this.functionId = functionId;
+        this.config = config;
+        this.function = function;
+        this.stats = new CachingSupplier.Stats(functionId);
+        this.policy = config.getMaximumSize() > 0 ?
+                new WindowTinyLfuPolicy<>(cachingSuppliersByKey, stats, config.getMaximumSize()) : null;
+        this.scheduler = scheduler.start();
+    }
+
+    /**
+     * Gets function id.
+     *
+     * @return the function id
+     */
+    public String getFunctionId() {
+        return functionId;
+    }
+
+    /**
+     * Gets the result for a key.
+     *
+     * @param key the key
+     * @return the result
+     */
+    @Override
+    public V apply(K key) {
+        return getCachingSupplier(key).get();
+    }
+
+    /**
+     * Gets the result for a key, waiting at most until the deadline.
+     *
+     * @param key     the key
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout argument
+     * @return the result, or the key's previous cached result if the deadline passed and it is not too old
+     * @throws CachingSupplierTimeoutException if the deadline passed and there is no previous result young enough
+     */
+    public V apply(K key, long timeout, TimeUnit unit) {
+        return getCachingSupplier(key).get(timeout, unit);
+    }
+
+    /**
+     * Gets the result for a key without blocking.
+     *
+     * @param key the key
+     * @return the future result
+     */
+    public CompletableFuture<V> applyAsync(K key) {
+        return getCachingSupplier(key).getAsync();
+    }
+
+    private CachingSupplier<V> getCachingSupplier(K key) {
+        Objects.requireNonNull(key, "key");
+        WindowTinyLfuPolicy.Node<K, V> node = cachingSuppliersByKey.get(key);
+        if (node != null) {
+            if (policy != null) {
+                policy.recordRead(node);
+            }
+            return node.cachingSupplier;
+        }
+        WindowTinyLfuPolicy.Node<K, V> newNode = new WindowTinyLfuPolicy.Node<>(key,
+                new CachingSupplier<>(functionId + "[" + key + "]", config, () -> function.apply(key), stats));
+        newNode.cachingSupplier.setScheduler(scheduler, () -> expire(newNode));
+        node = cachingSuppliersByKey.putIfAbsent(key, newNode);
+        if (node != null) {
+            return node.cachingSupplier;
+        }
+        if (policy != null) {
+            policy.recordWrite(newNode);
+        }
+        return newNode.cachingSupplier;
+    }
+
+    // Runs on the timer thread shared by every cache on the scheduler, so it must not wait on this cache's policy
+    private void expire(WindowTinyLfuPolicy.Node<K, V> node) {
+        if (node.cachingSupplier.isExpiredAndIdle() && cachingSuppliersByKey.remove(node.key, node) && policy != null) {
+            policy.recordExpiry(node);
+        }
+    }
+
+    /**
+     * Remove the entries whose results have expired and that have no function call in flight, and run any pending
+     * eviction.
+     */
+    public void cleanUp() {
+        cachingSuppliersByKey.forEach((key, node) -> {
+            if (node.cachingSupplier.isExpiredAndIdle() && cachingSuppliersByKey.remove(key, node) && policy != null) {
+                policy.recordRemoval(node);
+            }
+        });
+        if (policy != null) {
+            policy.drain();
+        }
+    }
+
+    /**
+     * Gets the number of keys held.
+     *
+     * @return the size
+     */
+    public int size() {
+        return cachingSuppliersByKey.size();
+    }
+
+    /**
+     * Gets the stats of all keys combined.
+     *
+     * @param reset reset the counters as they are read
+     * @return the stats snapshot
+     */
+    public CachingSupplier.StatsSnapshot getStatsSnapshot(boolean reset) {
+        return stats.snapshot(reset, config.getMaxConcurrentRunningSuppliers(), config.getCachedResultsTTL(),
+                AdaptiveTTLPolicy.REASON_CONFIGURED);
+    }
+
+    /**
+     * Gets json stats of all keys combined.
+     *
+     * @param reset reset the counters as they are read
+     * @return the json stats
+     */
+    public String getJsonStats(boolean reset) {
+        return getStatsSnapshot(reset).toJson();
+    }
+
+    /**
+     * Clear.
+     */
+    @SuppressWarnings("unused")
+    protected void clear() {    // used by unit tests
+        cachingSuppliersByKey.forEach((key, node) -> {
+            if (cachingSuppliersByKey.remove(key, node) && policy != null) {
+                policy.recordRemoval(node);
+            }
+        });
+    }
+}
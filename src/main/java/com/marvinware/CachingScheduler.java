@@ -0,0 +1,214 @@
+package com.marvinware;
+
+import com.marvinware.utils.TimerWheel;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The type Caching scheduler.  Background work for any number of CachingSupplierManagers and CachingFunctions:
+ * result expiry on one timer wheel thread, and background refreshes and stats sampling on a small fixed pool.
+ * <p>
+ * Inject one into each manager instead of every manager running threads of its own.  Managers built without one
+ * share {@link #shared()}, which is never closed.  After close(), expiry timers are no longer kept and background
+ * refreshes run on the caller's thread.
+ * <p>
+ * Expiry is timed with the scheduler's ticker.  A supplier whose config has another ticker, e.g. a ManualTicker,
+ * gets a timer wheel of this scheduler on its own ticker, so its results expire by its own clock and close() stops
+ * its expiry too.  Those wheels are only weakly held: once no supplier uses a ticker, its wheel is dropped, and a
+ * wheel's thread ends while nothing is scheduled on it.
+ */
+public class CachingScheduler implements AutoCloseable {
+    private static final System.Logger logger = System.getLogger(CachingScheduler.class.getName());
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+
+    private final String name;
+    private final int poolSize;
+    private final Ticker ticker;
+    private volatile TimerWheel expiryTimer;
+    private volatile ScheduledThreadPoolExecutor executor;
+    private volatile boolean closed = false;
+    // guarded by this
+    private final Map<Ticker, WeakReference<TimerWheel>> expiryTimersByTicker = new WeakHashMap<>();
+    private int expiryTimerCount = 0;
+
+    /**
+     * Instantiates a new Caching scheduler with a pool of two threads on the system ticker.
+     */
+    public CachingScheduler() {
+        this(2, Ticker.systemTicker());
+    }
+
+    /**
+     * Instantiates a new Caching scheduler.  No threads are started until start().
+     *
+     * @param poolSize the number of threads for background refreshes and stats sampling
+     * @param ticker   the ticker expiry is timed with
+     */
+    public CachingScheduler(int poolSize, Ticker ticker) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Invalid CachingScheduler pool size: " + poolSize);
+        }
+        this.name = CachingScheduler.class.getName() + "-" + instanceCount.incrementAndGet();
+        this.poolSize = poolSize;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Gets the process wide scheduler used by managers and functions built without one.
+     *
+     * @return the shared scheduler, started
+     */
+    public static CachingScheduler shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Start the timer wheel and the pool.  Does nothing if already started.
+     *
+     * @return this scheduler
+     * @throws IllegalStateException if the scheduler was closed
+     */
+    public synchronized CachingScheduler start() {
+        if (closed) {
+            throw new IllegalStateException("CachingScheduler is closed: " + name);
+        }
+        if (executor == null) {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(poolSize, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName(name + ".Worker");
+                return t;
+            });
+            pool.setRemoveOnCancelPolicy(true);
+            pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            expiryTimer = new TimerWheel(name + ".Expiry", ticker, 10L, TimeUnit.MILLISECONDS);
+            executor = pool;
+        }
+        return this;
+    }
+
+    /**
+     * Is started boolean.
+     *
+     * @return true if started and not closed
+     */
+    public boolean isStarted() {
+        return executor != null && !closed;
+    }
+
+    /**
+     * Gets ticker.
+     *
+     * @return the ticker expiry is timed with
+     */
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Gets the timer wheel cached results schedule their expiry on.
+     *
+     * @return the expiry timer
+     * @throws IllegalStateException if the scheduler was not started
+     */
+    public TimerWheel getExpiryTimer() {
+        checkStarted();
+        return expiryTimer;
+    }
+
+    /**
+     * Gets the timer wheel cached results timed with a ticker schedule their expiry on: the scheduler's own for its
+     * ticker, otherwise one of this scheduler's for that ticker, started on first use and stopped by close().
+     *
+     * @param ticker the ticker the results are timed with
+     * @return the expiry timer
+     * @throws IllegalStateException if the scheduler was not started
+     */
+    public synchronized TimerWheel getExpiryTimer(Ticker ticker) {
+        checkStarted();
+        if (ticker == this.ticker || closed) {
+            // once closed, the own wheel hands back every schedule already cancelled
+            return expiryTimer;
+        }
+        WeakReference<TimerWheel> reference = expiryTimersByTicker.get(ticker);
+        TimerWheel timerWheel = (reference != null) ? reference.get() : null;
+        if (timerWheel == null) {
+            timerWheel = new TimerWheel(name + ".Expiry-" + (++expiryTimerCount), ticker, 10L, TimeUnit.MILLISECONDS);
+            expiryTimersByTicker.put(ticker, new WeakReference<>(timerWheel));
+        }
+        return timerWheel;
+    }
+
+    /**
+     * Gets the pool background refreshes run on.
+     *
+     * @return the executor
+     * @throws IllegalStateException if the scheduler was not started
+     */
+    public Executor getExecutor() {
+        checkStarted();
+        return executor;
+    }
+
+    /**
+     * Run a task periodically on the pool, e.g. to sample stats.  A task that throws is logged and keeps its schedule.
+     *
+     * @param task   the task
+     * @param period the period
+     * @param unit   the time unit of the period
+     * @return the scheduled future, cancel it to stop the task
+     * @throws IllegalStateException if the scheduler was not started
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period, TimeUnit unit) {
+        checkStarted();
+        return ((ScheduledExecutorService) executor).scheduleAtFixedRate(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(System.Logger.Level.ERROR, "Scheduled task failed in " + name, e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stop the timer wheel and the pool.  Running tasks are not interrupted.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor != null) {
+            expiryTimer.close();
+            for (WeakReference<TimerWheel> reference : expiryTimersByTicker.values()) {
+                TimerWheel timerWheel = reference.get();
+                if (timerWheel != null) {
+                    timerWheel.close();
+                }
+            }
+            expiryTimersByTicker.clear();
+            executor.shutdown();
+        }
+    }
+
+    private void checkStarted() {
+        if (executor == null) {
+            throw new IllegalStateException("CachingScheduler is not started: " + name);
+        }
+    }
+
+    private static final class Shared {
+        static final CachingScheduler INSTANCE = new CachingScheduler().start();
+
+        private Shared() { }
+    }
+}
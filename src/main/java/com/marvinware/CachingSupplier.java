@@ -1,8 +1,20 @@
 package com.marvinware;
 
 import com.marvinware.utils.CompletableChainableFutureWithTS;
+import com.marvinware.utils.LatencyHistogram;
+import com.marvinware.utils.TimerWheel;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 
 
@@ -18,14 +30,21 @@ public class CachingSupplier<T> implements Supplier<T> {
      */
     public static final CachingSupplierConfig defaultConfig = new CachingSupplierConfig() { };
     private static final System.Logger logger = System.getLogger(CachingSupplier.class.getName());
+    private static final long ONE_MILLI_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
     private final String supplierId;
     private final CachingSupplierConfig config;
     private final Supplier<T> supplier;
     private final Stats stats;
-    private volatile int supplierRunCount = 0;
-    private long previousFutureStartTime = 0L;
-    private SupplierState state = SupplierState.init;
-    private CompletableChainableFutureWithTS<T> sharedFuture;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final AdaptiveTTLPolicy adaptiveTTLPolicy;
+    private final Ticker ticker;
+    private TimerWheel expiryTimer;
+    private Executor backgroundExecutor;
+    private Runnable onExpiry;
+    private final AtomicReference<StateRecord<T>> stateRef = new AtomicReference<>(StateRecord.initial());
+    private volatile long lastAccessTS = 0L;
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong resultGeneration = new AtomicLong();
 
     /**
      * Instantiates a new Caching supplier.
@@ -45,10 +64,25 @@ public class CachingSupplier<T> implements Supplier<T> {
      * @param supplier   the supplier
      */
     public CachingSupplier(String supplierId, CachingSupplierConfig config, Supplier<T> supplier) {
+        this(supplierId, config, supplier, new Stats(supplierId));
+    }
+
+    /**
+     * Instantiates a new Caching supplier that records into shared stats, e.g. one per key of a CachingFunction.
+     *
+     * @param supplierId the supplier id
+     * @param config     the config
+     * @param supplier   the supplier
+     * @param stats      the stats
+     */
+    CachingSupplier(String supplierId, CachingSupplierConfig config, Supplier<T> supplier, Stats stats) {
         this.supplierId = supplierId;
         this.config = config;
         this.supplier = supplier;
-        this.stats = new Stats(supplierId);
+        this.stats = stats;
+        this.concurrencyLimit = config.newConcurrencyLimit();
+        this.adaptiveTTLPolicy = config.isAdaptiveTTLEnabled() ? new AdaptiveTTLPolicy(config) : null;
+        this.ticker = config.getTicker();
     }
 
     /**
@@ -65,77 +99,452 @@ public class CachingSupplier<T> implements Supplier<T> {
     @Override
     public T get() {
         T supplierResult;
-        long localStartTS = System.currentTimeMillis();
-        long delegateStartTS;
-        long supplierTime = -1L;
-        long futureTime = -1L;
-        int localSupplierCount = 0;
+        long localStartNanos = System.nanoTime();
+        long delegateStartNanos;
+        long supplierNanos = -1L;
+        long futureNanos = -1L;
 
-        boolean fetchNew = processCurrentState();
+        Decision<T> decision = processCurrentState();
+        int localSupplierCount = decision.record.supplierRunCount;
+        recordAccess();
 
-        delegateStartTS = System.currentTimeMillis();
+        delegateStartNanos = System.nanoTime();
         try {
-            if (fetchNew) {
-                localSupplierCount = getCurrentSupplierCount();
-                supplierResult = supplier.get();
-                updateState(supplierResult);
-                supplierTime = System.currentTimeMillis() - delegateStartTS;
+            if (decision.action == Action.fetch) {
+                try {
+                    supplierResult = supplier.get();
+                    supplierNanos = System.nanoTime() - delegateStartNanos;
+                    concurrencyLimit.onSample(supplierNanos, localSupplierCount, false);
+                    stats.incrementResultFromSupplier();
+                    updateState(decision.record, supplierResult, supplierNanos);
+                } catch (RuntimeException | Error e) {
+                    supplierNanos = System.nanoTime() - delegateStartNanos;
+                    concurrencyLimit.onSample(supplierNanos, localSupplierCount, true);
+                    updateStateExceptionally(decision.record.sharedFuture, e);
+                    supplierResult = getStaleIfError(e);
+                }
             } else {
-                localSupplierCount = getCurrentSupplierCount();
-                supplierResult = sharedFuture.get();
-                futureTime = System.currentTimeMillis() - delegateStartTS;
+                if (decision.action != Action.join) {
+                    runSupplierAsync(decision.record, decision.action);
+                }
+                try {
+                    supplierResult = decision.future.get();
+                } catch (ExecutionException e) {
+                    supplierResult = getStaleIfError(e);
+                }
+                futureNanos = System.nanoTime() - delegateStartNanos;
             }
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException e) {
             String errorMessage = "Error in CachingSupplier get() invocation";
             throw new RuntimeException(errorMessage, e);
         }
 
-        stats.updateStats(supplierTime, futureTime, System.currentTimeMillis() - localStartTS, localSupplierCount);
+        stats.updateStats(supplierNanos, futureNanos, System.nanoTime() - localStartNanos, localSupplierCount);
 
         return supplierResult;
     }
 
-    private synchronized boolean processCurrentState() {
-        boolean newFuture = false;
+    /**
+     * Gets the result, waiting at most until the deadline.  When the deadline passes, the previous cached result is
+     * returned if it is no older than the cached results TTL plus the longer of the stale-if-error and
+     * stale-while-revalidate times.  A supplier run started by this call runs on the supplier executor so the deadline
+     * also holds for it; the run continues after a timeout and its result is cached as usual.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the time unit of the timeout argument
+     * @return the result
+     * @throws CachingSupplierTimeoutException if the deadline passed and there is no previous result young enough
+     */
+    public T get(long timeout, TimeUnit unit) {
+        T supplierResult;
+        long localStartNanos = System.nanoTime();
+        long futureNanos;
+
+        Decision<T> decision = processCurrentState();
+        int localSupplierCount = decision.record.supplierRunCount;
+        recordAccess();
 
-        switch (state) {
-            case init:
-                newFuture = true;
-                break;
+        if (decision.action != Action.join) {
+            runSupplierAsync(decision.record, decision.action);
+        }
+        try {
+            supplierResult = decision.future.get(timeout, unit);
+        } catch (ExecutionException e) {
+            supplierResult = getStaleIfError(e);
+        } catch (TimeoutException e) {
+            supplierResult = getPreviousResult(e);
+        } catch (InterruptedException e) {
+            String errorMessage = "Error in CachingSupplier get() invocation";
+            throw new RuntimeException(errorMessage, e);
+        }
+        futureNanos = System.nanoTime() - localStartNanos;
 
-            case fetching:
-                if (notAtMaxSupplierCount() && notInSupplierStaggerDelay()) {
-                    newFuture = true;
-                } else {
-                    stats.incrementResultFromCachingSupplier();
+        stats.updateStats(-1L, futureNanos, futureNanos, localSupplierCount);
+
+        return supplierResult;
+    }
+
+    /**
+     * Gets the result without blocking.  A cache hit returns an already completed future; otherwise the returned
+     * future completes when the shared supplier run does.  Supplier runs started here use the configured supplier
+     * executor.
+     *
+     * @return the future result
+     */
+    public CompletableFuture<T> getAsync() {
+        return getAsync(false);
+    }
+
+    /**
+     * Gets the result without blocking, for warming up: like getAsync(), but where that would serve the last result
+     * while a run reloads it, the returned future completes with the run instead.
+     *
+     * @return the future result
+     */
+    CompletableFuture<T> warmAsync() {
+        return getAsync(true);
+    }
+
+    private CompletableFuture<T> getAsync(boolean waitForRun) {
+        long localStartNanos = System.nanoTime();
+
+        Decision<T> decision = processCurrentState();
+        int localSupplierCount = decision.record.supplierRunCount;
+        recordAccess();
+
+        if (decision.action != Action.join) {
+            runSupplierAsync(decision.record, decision.action);
+        }
+        CompletableChainableFutureWithTS<T> future = decision.future;
+        if (waitForRun && decision.record.state == SupplierState.fetching && future == decision.record.lastCompleted) {
+            future = decision.record.sharedFuture;
+        }
+        // A dependent future is returned so that callers can not complete or cancel the shared one
+        return future.handle((r, e) -> {
+            T result = (e == null) ? r : getStaleIfError(e);
+            long getCallNanos = System.nanoTime() - localStartNanos;
+            stats.updateStats(-1L, decision.action == Action.fetch ? -1L : getCallNanos, getCallNanos, localSupplierCount);
+            return result;
+        });
+    }
+
+    // Lock-free: a fresh cached hit is a single volatile read of stateRef.  Transitions are CAS'd, so only one
+    // caller can win each new supplier run.
+    private Decision<T> processCurrentState() {
+        while (true) {
+            StateRecord<T> current = stateRef.get();
+            Action action = Action.join;
+
+            switch (current.state) {
+                case init:
+                    action = Action.fetch;
+                    break;
+
+                case fetching:
+                    // The run completes its future just before it caches the result: join it, not run again
+                    if (isJustCompleted(current)) {
+                        stats.incrementResultFromCache();
+                        return current.join;
+                    } else if (isServable(current)) {
+                        incrementResultFromLastCompleted(current);
+                        return current.lastCompletedJoin;
+                    } else if (notAtMaxSupplierCount(current) && notInSupplierStaggerDelay(current)) {
+                        action = Action.fetch;
+                    } else {
+                        stats.incrementResultFromCachingSupplier();
+                        return current.join;
+                    }
+                    break;
+
+                case cached:
+                    if (isCacheStale(current) && notAtMaxSupplierCount(current) && notInSupplierStaggerDelay(current)) {
+                        action = isServable(current) ? Action.refresh : Action.fetch;
+                    } else if (isRefreshAheadDue(current) && notAtMaxSupplierCount(current) && notInSupplierStaggerDelay(current)) {
+                        action = Action.refreshAhead;
+                    } else {
+                        stats.incrementResultFromCache();
+                        return current.join;
+                    }
+                    break;
+
+                case failed:
+                    // Inside the negative cache TTL the failure is returned without calling the supplier again
+                    if (!isNegativeCacheExpired(current)) {
+                        stats.incrementNegativeCacheHit();
+                        return current.join;
+                    } else if (notAtMaxSupplierCount(current) && notInSupplierStaggerDelay(current)) {
+                        action = isServable(current) ? Action.refresh : Action.fetch;
+                    } else {
+                        stats.incrementNegativeCacheHit();
+                        return current.join;
+                    }
+                    break;
+            }
+            CompletableChainableFutureWithTS<T> previous = current.sharedFuture;
+            CompletableChainableFutureWithTS<T> newSharedFuture = new CompletableChainableFutureWithTS<>(
+                    previous != null && !previous.isDone() ? previous : null, ticker);
+            newSharedFuture.setStartTS(ticker.read());
+            StateRecord<T> next = new StateRecord<>(SupplierState.fetching, newSharedFuture, current.lastCompleted,
+                    current.cachedResultsTTL, current.supplierRunCount + 1, (previous == null) ? 0L : previous.getStartTS(),
+                    invalidations.get());
+            if (stateRef.compareAndSet(current, next)) {
+                if (action == Action.fetch) {
+                    return new Decision<>(action, next, next.sharedFuture);
+                }
+                incrementResultFromLastCompleted(next);
+                return new Decision<>(action, next, next.lastCompleted);
+            }
+        }
+    }
+
+    private void incrementResultFromLastCompleted(StateRecord<T> record) {
+        if (record.lastCompleted.getResultAge() > record.cachedResultsTTL) {
+            stats.incrementResultFromStale();
+        } else {
+            stats.incrementResultFromCache();
+        }
+    }
+
+    private void runSupplierAsync(StateRecord<T> record, Action action) {
+        Runnable run = () -> {
+            long startNanos = System.nanoTime();
+            try {
+                T supplierResult = supplier.get();
+                long supplierNanos = System.nanoTime() - startNanos;
+                concurrencyLimit.onSample(supplierNanos, record.supplierRunCount, false);
+                if (action == Action.fetch) {
+                    stats.incrementResultFromSupplier();
+                }
+                updateState(record, supplierResult, supplierNanos);
+                stats.recordSupplierRun(supplierNanos, action);
+            } catch (RuntimeException | Error e) {
+                concurrencyLimit.onSample(System.nanoTime() - startNanos, record.supplierRunCount, true);
+                updateStateExceptionally(record.sharedFuture, e);
+                logger.log(System.Logger.Level.ERROR, "Async supplier run failed for CachingSupplier with id: " + supplierId, e);
+            }
+        };
+        // Refreshes nobody waits on go to the scheduler's pool, unless suppliers are to run on virtual threads
+        Executor executor = backgroundExecutor != null && action != Action.fetch && !config.isVirtualThreadsEnabled() ?
+                backgroundExecutor : config.getSupplierExecutor();
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            run.run();
+        }
+    }
+
+    private void updateState(StateRecord<T> ownRecord, T supplierResult, long supplierNanos) {
+        CompletableChainableFutureWithTS<T> ownFuture = ownRecord.sharedFuture;
+        boolean cachingEnabled = config.isCachingEnabled();
+        SupplierState newState = cachingEnabled ? SupplierState.cached : SupplierState.init;
+        long cachedResultsTTL = nextCachedResultsTTL(supplierNanos);
+        while (true) {
+            StateRecord<T> current = stateRef.get();
+            // Checked inside the loop: invalidate() counts before it swaps the state, so an invalidate() that lands
+            // after this check fails our CAS, or replaces the state we cache.
+            if (ownRecord.invalidationGeneration != invalidations.get()) {
+                // started before an invalidate(): its own waiters get the result, but it is not cached
+                StateRecord<T> next = new StateRecord<>(current.state, current.sharedFuture, current.lastCompleted,
+                        current.cachedResultsTTL, current.supplierRunCount - 1, current.previousFutureStartTime,
+                        current.invalidationGeneration);
+                if (stateRef.compareAndSet(current, next)) {
+                    ownFuture.complete(supplierResult);
+                    return;
+                }
+                continue;
+            }
+            // Completing the latest shared future also completes every future chained behind it, so all waiters
+            // are released before the cached state becomes visible to the lock-free hit path.
+            CompletableChainableFutureWithTS<T> completed = current.sharedFuture;
+            if (completed != null) {
+                completed.complete(supplierResult);
+            }
+            if (completed == null || completed.isCompletedExceptionally()) {
+                // a failed run already completed the shared future, so cache the result in a future of its own
+                completed = new CompletableChainableFutureWithTS<>(null, ticker);
+                completed.setStartTS(ownFuture.getStartTS());
+                completed.complete(supplierResult);
+            }
+            StateRecord<T> next = new StateRecord<>(newState, completed, cachingEnabled ? completed : null,
+                    cachedResultsTTL, current.supplierRunCount - 1, current.previousFutureStartTime,
+                    current.invalidationGeneration);
+            if (stateRef.compareAndSet(current, next)) {
+                if (cachingEnabled) {
+                    scheduleExpiry(cachedResultsTTL + getRetentionTime());
                 }
                 break;
+            }
+        }
+        if (!ownFuture.isDone()) {
+            ownFuture.complete(supplierResult);
+        }
+    }
 
-            case cached:
-                if (isCacheStale() && notAtMaxSupplierCount() && notInSupplierStaggerDelay()) {
-                    newFuture = true;
+    // Failures are fanned out to every waiter on this run.  The state only moves to failed when this was the latest
+    // run; a newer run that is still in flight keeps its waiters.  With negative caching off, the failure is never
+    // cached: the state goes back to the last good result, which is stale or soon will be, or to init.
+    private void updateStateExceptionally(CompletableChainableFutureWithTS<T> ownFuture, Throwable error) {
+        stats.incrementSupplierError();
+        if (adaptiveTTLPolicy != null) {
+            adaptiveTTLPolicy.onFailure();
+        }
+        ownFuture.completeExceptionally(error);
+        while (true) {
+            StateRecord<T> current = stateRef.get();
+            SupplierState newState = current.state;
+            CompletableChainableFutureWithTS<T> sharedFuture = current.sharedFuture;
+            if (current.sharedFuture == ownFuture) {
+                if (config.getNegativeCachedResultsTTL() > 0) {
+                    newState = SupplierState.failed;
+                } else if (current.lastCompleted != null) {
+                    newState = SupplierState.cached;
+                    sharedFuture = current.lastCompleted;
                 } else {
-                    stats.incrementResultFromCache();
+                    newState = SupplierState.init;
+                }
+            }
+            StateRecord<T> next = new StateRecord<>(newState, sharedFuture, current.lastCompleted,
+                    current.cachedResultsTTL, current.supplierRunCount - 1, current.previousFutureStartTime,
+                    current.invalidationGeneration);
+            if (stateRef.compareAndSet(current, next)) {
+                if (newState == SupplierState.failed && current.state != SupplierState.failed) {
+                    scheduleExpiry(Math.max(current.cachedResultsTTL + getRetentionTime(),
+                            config.getNegativeCachedResultsTTL()));
+                } else if (newState == SupplierState.cached && sharedFuture != current.sharedFuture) {
+                    scheduleExpiry(current.cachedResultsTTL + getRetentionTime());
                 }
                 break;
+            }
+        }
+    }
+
+    // One timer per result: it fires just after the result can no longer be served, also not in place of an error.
+    // Timers of results that have since been replaced find the cache fresh, or a run in flight, and do nothing.
+    private void scheduleExpiry(long expiresIn) {
+        if (expiryTimer != null) {
+            expiryTimer.schedule(onExpiry, expiresIn + 1L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Seed the cache with a result restored from a snapshot, back-dated to its original age, so it is served and
+     * expires as if it had never left.  Only a supplier that has not run yet is seeded, and a result too old to be
+     * served is not.
+     *
+     * @param value     the result
+     * @param ageMillis the age of the result
+     * @return true if the cache was seeded
+     */
+    boolean seed(T value, long ageMillis) {
+        long cachedResultsTTL = jitterCachedResultsTTL(config.getCachedResultsTTL());
+        long servableFor = cachedResultsTTL + config.getStaleWhileRevalidateTime() - Math.max(0L, ageMillis);
+        long completeTS = ticker.read() - TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ageMillis));
+        if (!config.isCachingEnabled() || servableFor < 0L || completeTS <= 0L) {
+            return false;
+        }
+        CompletableChainableFutureWithTS<T> completed = new CompletableChainableFutureWithTS<>(null, ticker);
+        completed.setStartTS(completeTS);
+        completed.complete(value);
+        completed.setCompleteTS(completeTS);
+        StateRecord<T> next = new StateRecord<>(SupplierState.cached, completed, completed, cachedResultsTTL, 0, 0L,
+                invalidations.get());
+        if (!stateRef.compareAndSet(StateRecord.initial(), next)) {
+            return false;
+        }
+        scheduleExpiry(cachedResultsTTL + getRetentionTime() - Math.max(0L, ageMillis));
+        return true;
+    }
+
+    /**
+     * Gets the last successfully completed result, e.g. to write it to a snapshot.
+     *
+     * @return the completed future, or null when there is no result
+     */
+    CompletableChainableFutureWithTS<T> getLastCompleted() {
+        return stateRef.get().lastCompleted;
+    }
+
+    /**
+     * Sets the scheduler for background work: each cached result schedules its expiry on the scheduler's timer wheel
+     * when expiry is on, and background refreshes run on its pool.  Called before the supplier is shared.  When the
+     * scheduler times with another ticker than this supplier, expiry goes to the scheduler's wheel for this
+     * supplier's ticker, as a timer on another clock would fire when nothing has expired by ours.
+     *
+     * @param scheduler the started scheduler
+     * @param onExpiry  run when a result expires; clearCacheIfStale() when null
+     */
+    void setScheduler(CachingScheduler scheduler, Runnable onExpiry) {
+        this.expiryTimer = config.isCacheCleanupThreadEnabled() ? scheduler.getExpiryTimer(ticker) : null;
+        this.backgroundExecutor = scheduler.getExecutor();
+        this.onExpiry = onExpiry != null ? onExpiry : this::clearCacheIfStale;
+    }
+
+    // Bounded like stale-if-error: with cleanup off, nothing else would stop an hours old result being returned
+    private T getPreviousResult(TimeoutException timeout) {
+        stats.incrementTimeout();
+        StateRecord<T> current = stateRef.get();
+        CompletableChainableFutureWithTS<T> lastCompleted = current.lastCompleted;
+        if (lastCompleted != null && lastCompleted.getResultAge() <= current.cachedResultsTTL +
+                Math.max(config.getStaleIfErrorTime(), config.getStaleWhileRevalidateTime())) {
+            stats.incrementResultFromTimeoutFallback();
+            return lastCompleted.getNow(null);
+        }
+        throw new CachingSupplierTimeoutException("Timed out waiting for CachingSupplier with id: " + supplierId, timeout);
+    }
+
+    // The last good result is returned instead of the error when it is inside the stale-if-error window
+    private T getStaleIfError(Throwable error) {
+        StateRecord<T> current = stateRef.get();
+        CompletableChainableFutureWithTS<T> lastCompleted = current.lastCompleted;
+        if (lastCompleted != null &&
+                lastCompleted.getResultAge() <= current.cachedResultsTTL + config.getStaleIfErrorTime()) {
+            stats.incrementResultFromStaleIfError();
+            return lastCompleted.getNow(null);
+        }
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = new ExecutionException(error.getCause());
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
         }
-        if (newFuture) {
-            supplierRunCount++;
-            state = SupplierState.fetching;
-            previousFutureStartTime = (sharedFuture == null) ? 0L : sharedFuture.getStartTS();
-            sharedFuture = new CompletableChainableFutureWithTS<>(
-                    sharedFuture != null && !sharedFuture.isDone() ? sharedFuture : null);
-            sharedFuture.setStartTS(System.currentTimeMillis());
-            return true;
+        String errorMessage = "Error in CachingSupplier get() invocation";
+        throw new RuntimeException(errorMessage, error);
+    }
+
+    // Each result generation gets its own TTL, jittered down by up to the configured range so that suppliers and
+    // nodes that started together do not all expire together.  The offset is a SplitMix64 hash of the node seed,
+    // supplier id and generation: spread evenly, and different on every node.
+    private long nextCachedResultsTTL(long supplierNanos) {
+        long ttl = adaptiveTTLPolicy == null ? config.getCachedResultsTTL() :
+                adaptiveTTLPolicy.nextTTL(supplierNanos, stats.getHits(), stats.getTotal(),
+                        concurrencyLimit.getLimit() < config.getMaxConcurrentRunningSuppliers());
+        return jitterCachedResultsTTL(ttl);
+    }
+
+    private long jitterCachedResultsTTL(long ttl) {
+        long range = Math.min(ttl, Math.max(config.getCachedResultsTTLJitter(),
+                (long) (ttl * config.getCachedResultsTTLJitterPercent() / 100.0)));
+        if (range <= 0L) {
+            return ttl;
         }
-        return false;
+        long z = config.getTTLJitterSeed() + 31L * supplierId.hashCode() + resultGeneration.incrementAndGet() * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return ttl - Math.floorMod(z, range + 1L);
     }
 
-    private synchronized void updateState(T supplierResult) {
-        stats.incrementResultFromSupplier();
-        state = (config.isCachingEnabled()) ? SupplierState.cached : SupplierState.init;
-        sharedFuture.complete(supplierResult);
-        supplierRunCount--;
+    // Only written when refresh-ahead is on, and at most once per millisecond, to keep the hit path from
+    // contending on this field.
+    private void recordAccess() {
+        if (config.getRefreshAheadFactor() > 0) {
+            long now = ticker.read();
+            if (now - lastAccessTS >= ONE_MILLI_NANOS) {
+                lastAccessTS = now;
+            }
+        }
     }
 
     /**
@@ -143,8 +552,13 @@ public class CachingSupplier<T> implements Supplier<T> {
      *
      * @return the boolean
      */
-    public synchronized boolean notAtMaxSupplierCount() {
-        return config.getMaxConcurrentRunningSuppliers() < 1 || supplierRunCount < config.getMaxConcurrentRunningSuppliers();
+    public boolean notAtMaxSupplierCount() {
+        return notAtMaxSupplierCount(stateRef.get());
+    }
+
+    private boolean notAtMaxSupplierCount(StateRecord<T> record) {
+        int limit = concurrencyLimit.getLimit();
+        return limit < 1 || record.supplierRunCount < limit;
     }
 
     /**
@@ -152,8 +566,13 @@ public class CachingSupplier<T> implements Supplier<T> {
      *
      * @return the boolean
      */
-    public synchronized boolean notInSupplierStaggerDelay() {
-        return (System.currentTimeMillis() - previousFutureStartTime) >= config.getNewSupplierStaggerDelay();
+    public boolean notInSupplierStaggerDelay() {
+        return notInSupplierStaggerDelay(stateRef.get());
+    }
+
+    private boolean notInSupplierStaggerDelay(StateRecord<T> record) {
+        return record.previousFutureStartTime == 0L ||
+                ticker.read() - record.previousFutureStartTime >= TimeUnit.MILLISECONDS.toNanos(config.getNewSupplierStaggerDelay());
     }
 
     /**
@@ -161,8 +580,75 @@ public class CachingSupplier<T> implements Supplier<T> {
      *
      * @return the boolean
      */
-    public synchronized boolean isCacheStale() {
-        return getResultAge() > config.getCachedResultsTTL();
+    public boolean isCacheStale() {
+        return isCacheStale(stateRef.get());
+    }
+
+    private boolean isCacheStale(StateRecord<T> record) {
+        return getResultAge(record) > record.cachedResultsTTL;
+    }
+
+    /**
+     * Is cache expired boolean.  An expired result is stale and past the stale-while-revalidate window, so it can
+     * no longer be served.
+     *
+     * @return the boolean
+     */
+    public boolean isCacheExpired() {
+        return isCacheExpired(stateRef.get());
+    }
+
+    private boolean isCacheExpired(StateRecord<T> record) {
+        return getResultAge(record) > record.cachedResultsTTL + config.getStaleWhileRevalidateTime();
+    }
+
+    // The last good result is kept for stale-if-error after it can no longer be served otherwise
+    private boolean isRetainedForErrors(StateRecord<T> record) {
+        return record.lastCompleted != null &&
+                record.lastCompleted.getResultAge() <= record.cachedResultsTTL + config.getStaleIfErrorTime();
+    }
+
+    // How long after its TTL a result is kept: for stale-while-revalidate and for stale-if-error
+    private long getRetentionTime() {
+        return Math.max(config.getStaleWhileRevalidateTime(), config.getStaleIfErrorTime());
+    }
+
+    // A failure is cached for the negative cache TTL so a failing upstream is not called by every request.  The age
+    // is in whole milliseconds, so a TTL of 0 is checked on its own: a failure is then never served from the cache.
+    private boolean isNegativeCacheExpired(StateRecord<T> record) {
+        long negativeCachedResultsTTL = config.getNegativeCachedResultsTTL();
+        return negativeCachedResultsTTL <= 0 || getResultAge(record) > negativeCachedResultsTTL;
+    }
+
+    // The last completed result may be served without waiting while a refresh runs: it is either still fresh
+    // (refresh-ahead) or inside the stale-while-revalidate window.
+    private boolean isServable(StateRecord<T> record) {
+        return record.lastCompleted != null &&
+                record.lastCompleted.getResultAge() <= record.cachedResultsTTL + config.getStaleWhileRevalidateTime();
+    }
+
+    // A failed run is left to updateStateExceptionally(), which decides whether its error is cached at all
+    private boolean isJustCompleted(StateRecord<T> record) {
+        return config.isCachingEnabled() && record.sharedFuture.isDone() &&
+                !record.sharedFuture.isCompletedExceptionally();
+    }
+
+    // Refresh ahead of expiry only for a hot supplier: one that was also accessed within the access window
+    private boolean isRefreshAheadDue(StateRecord<T> record) {
+        double factor = config.getRefreshAheadFactor();
+        return factor > 0 && record.lastCompleted != null &&
+                getResultAge(record) >= (long) (record.cachedResultsTTL * factor) &&
+                lastAccessTS != 0L &&
+                ticker.read() - lastAccessTS <= TimeUnit.MILLISECONDS.toNanos(config.getRefreshAheadAccessWindow());
+    }
+
+    /**
+     * Gets the cached results TTL of the current result, after jitter.
+     *
+     * @return the cached results ttl
+     */
+    public long getCurrentCachedResultsTTL() {
+        return stateRef.get().cachedResultsTTL;
     }
 
     /**
@@ -170,8 +656,12 @@ public class CachingSupplier<T> implements Supplier<T> {
      *
      * @return the age of result
      */
-    public synchronized long getResultAge() {
-        return (sharedFuture != null) ? sharedFuture.getResultAge() : 0L;
+    public long getResultAge() {
+        return getResultAge(stateRef.get());
+    }
+
+    private long getResultAge(StateRecord<T> record) {
+        return (record.sharedFuture != null) ? record.sharedFuture.getResultAge() : 0L;
     }
 
     /**
@@ -179,36 +669,131 @@ public class CachingSupplier<T> implements Supplier<T> {
      *
      * @return the json stats
      */
-    public synchronized String getJsonStats(boolean reset) {
-        String ret = stats.getJsonStats();
-        if (reset) {
-            stats.resetStats();
-        }
-        return ret;
+    public String getJsonStats(boolean reset) {
+        return getStatsSnapshot(reset).toJson();
+    }
+
+    /**
+     * Gets a point-in-time copy of the stats.  Writers are never blocked while it is taken.
+     *
+     * @param reset reset the counters as they are read
+     * @return the stats snapshot
+     */
+    public StatsSnapshot getStatsSnapshot(boolean reset) {
+        return stats.snapshot(reset, concurrencyLimit.getLimit(), stateRef.get().cachedResultsTTL, getCachedResultsTTLReason());
+    }
+
+    /**
+     * Gets why the current cached results TTL was picked: configured, or with adaptive TTL one of overloaded,
+     * slowUpstream and fastUpstream.
+     *
+     * @return the reason
+     */
+    public String getCachedResultsTTLReason() {
+        return adaptiveTTLPolicy == null ? AdaptiveTTLPolicy.REASON_CONFIGURED : adaptiveTTLPolicy.getReason();
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     *
+     * @return the number of supplier runs allowed at once, or less than 1 for no limit
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getLimit();
     }
 
-    public synchronized void resetStats() {
+    public void resetStats() {
         stats.resetStats();
     }
 
+    /**
+     * Invalidate the cached result, e.g. on a change event, so the next get() calls the supplier.  Runs already in
+     * flight started before the change: their waiters still get their results, but the results are not cached.
+     */
+    public void invalidate() {
+        // a generation rather than a time: a run started in the same clock tick, but after this, is still cached
+        long generation = invalidations.incrementAndGet();
+        skipHostResults();
+        while (true) {
+            StateRecord<T> current = stateRef.get();
+            StateRecord<T> next = current.supplierRunCount == 0 ? StateRecord.initial() :
+                    new StateRecord<>(SupplierState.init, null, null, 0L, current.supplierRunCount, 0L, generation);
+            if (stateRef.compareAndSet(current, next)) {
+                logger.log(System.Logger.Level.DEBUG, "Invalidated cache for CachedSupplier with id: " + supplierId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reload the result in the background.  Until the new result is in, get() keeps returning the cached one while it
+     * is servable (fresh, or inside the stale-while-revalidate window).  If a run is already in flight, no new one is
+     * started.
+     *
+     * @return the future new result
+     */
+    public CompletableFuture<T> refresh() {
+        while (true) {
+            StateRecord<T> current = stateRef.get();
+            if (current.state == SupplierState.fetching) {
+                return current.sharedFuture.copy();
+            }
+            CompletableChainableFutureWithTS<T> newSharedFuture = new CompletableChainableFutureWithTS<>(null, ticker);
+            newSharedFuture.setStartTS(ticker.read());
+            StateRecord<T> next = new StateRecord<>(SupplierState.fetching, newSharedFuture, current.lastCompleted,
+                    current.cachedResultsTTL, current.supplierRunCount + 1,
+                    current.sharedFuture == null ? 0L : current.sharedFuture.getStartTS(), invalidations.get());
+            if (stateRef.compareAndSet(current, next)) {
+                skipHostResults();
+                runSupplierAsync(next, Action.refresh);
+                return newSharedFuture.copy();
+            }
+        }
+    }
+
+    // A forced run must reach upstream: a host coordinated supplier would otherwise return the shared result again
+    private void skipHostResults() {
+        if (supplier instanceof HostSingleFlightSupplier) {
+            ((HostSingleFlightSupplier<?>) supplier).skipPublishedResults();
+        }
+    }
+
     /**
      * Clear cache if stale.
      */
-    public synchronized void clearCacheIfStale() {
-        if (sharedFuture != null && isCacheStale() && supplierRunCount == 0) {
-            state = SupplierState.init;
-            sharedFuture = null;
+    public void clearCacheIfStale() {
+        StateRecord<T> current = stateRef.get();
+        if (current.sharedFuture != null && isCacheExpired(current) && current.supplierRunCount == 0 &&
+                (current.state != SupplierState.failed || isNegativeCacheExpired(current)) &&
+                !isRetainedForErrors(current) && stateRef.compareAndSet(current, StateRecord.initial())) {
             logger.log(System.Logger.Level.INFO, "Cleared cache for CachedSupplier with id: " + supplierId);
         }
     }
 
+    // Nothing in flight and nothing left that could be served: safe to drop, e.g. from a CachingFunction
+    boolean isExpiredAndIdle() {
+        StateRecord<T> current = stateRef.get();
+        return current.supplierRunCount == 0 && (current.sharedFuture == null || isCacheExpired(current) &&
+                (current.state != SupplierState.failed || isNegativeCacheExpired(current)) &&
+                !isRetainedForErrors(current));
+    }
+
     /**
      * Gets current supplier count.
      *
      * @return the current supplier count
      */
-    public synchronized int getCurrentSupplierCount() {
-        return supplierRunCount;
+    public int getCurrentSupplierCount() {
+        return stateRef.get().supplierRunCount;
+    }
+
+    /**
+     * Gets current supplier state.
+     *
+     * @return the current supplier state
+     */
+    public SupplierState getState() {
+        return stateRef.get().state;
     }
 
     /**
@@ -226,22 +811,394 @@ public class CachingSupplier<T> implements Supplier<T> {
         /**
          * Cached supplier state.
          */
-        cached
+        cached,
+        /**
+         * Failed supplier state.  The last supplier run threw; the failure is cached for the negative cache TTL.
+         */
+        failed
+    }
+
+    /**
+     * Immutable snapshot of the supplier state.  Every transition swaps in a new record with a CAS on stateRef.
+     */
+    private static final class StateRecord<T> {
+        private static final StateRecord<?> INITIAL = new StateRecord<>(SupplierState.init, null, null, 0L, 0, 0L, 0L);
+
+        private final SupplierState state;
+        private final CompletableChainableFutureWithTS<T> sharedFuture;
+        private final CompletableChainableFutureWithTS<T> lastCompleted;
+        private final long cachedResultsTTL;
+        private final int supplierRunCount;
+        private final long previousFutureStartTime;
+        // the invalidate() count when the record was made; a run whose record is behind the current count is not cached
+        private final long invalidationGeneration;
+        private final Decision<T> join;
+        private final Decision<T> lastCompletedJoin;
+
+        private StateRecord(SupplierState state, CompletableChainableFutureWithTS<T> sharedFuture,
+                            CompletableChainableFutureWithTS<T> lastCompleted, long cachedResultsTTL,
+                            int supplierRunCount, long previousFutureStartTime, long invalidationGeneration) {
+            this.state = state;
+            this.sharedFuture = sharedFuture;
+            this.lastCompleted = lastCompleted;
+            this.cachedResultsTTL = cachedResultsTTL;
+            this.supplierRunCount = supplierRunCount;
+            this.previousFutureStartTime = previousFutureStartTime;
+            this.invalidationGeneration = invalidationGeneration;
+            this.join = new Decision<>(Action.join, this, sharedFuture);
+            this.lastCompletedJoin = new Decision<>(Action.join, this, lastCompleted);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> StateRecord<T> initial() {
+            return (StateRecord<T>) INITIAL;
+        }
     }
 
-    private static class Stats {
+    /**
+     * What the caller does with the future it is given by processCurrentState().
+     */
+    private enum Action {
+        /**
+         * Run the supplier inline to complete the record's shared future.
+         */
+        fetch,
+        /**
+         * Start a background supplier run after a stale-while-revalidate hit and return the last completed result.
+         */
+        refresh,
+        /**
+         * Start a background supplier run ahead of expiry and return the last completed result.
+         */
+        refreshAhead,
+        /**
+         * Wait on the future for the result.
+         */
+        join
+    }
+
+    /**
+     * Outcome of processCurrentState(): the action to take and the future whose result is returned.
+     */
+    private static final class Decision<T> {
+        private final Action action;
+        private final StateRecord<T> record;
+        private final CompletableChainableFutureWithTS<T> future;
+
+        private Decision(Action action, StateRecord<T> record, CompletableChainableFutureWithTS<T> future) {
+            this.action = action;
+            this.record = record;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Immutable copy of the stats of a CachingSupplier.
+     */
+    public static final class StatsSnapshot {
+        private final String supplierId;
+        private final long resultsFromCache;
+        private final long resultsFromFuture;
+        private final long resultsFromSupplier;
+        private final long resultsFromStale;
+        private final long backgroundRefreshes;
+        private final long refreshAheadRuns;
+        private final long supplierErrors;
+        private final long negativeCacheHits;
+        private final long resultsFromStaleIfError;
+        private final long timeouts;
+        private final long resultsFromTimeoutFallback;
+        private final long evictions;
+        private final long maxConcurrentSuppliers;
+        private final int concurrencyLimit;
+        private final long cachedResultsTTL;
+        private final String cachedResultsTTLReason;
+        private final long maxSupplierTime;
+        private final long maxGetTime;
+        private final long maxFutureTime;
+        private final long totalGetTime;
+        private final long totalCnt;
+        private final LatencyHistogram.Snapshot getTimeNanos;
+        private final LatencyHistogram.Snapshot supplierTimeNanos;
+        private final LatencyHistogram.Snapshot futureTimeNanos;
+
+        private StatsSnapshot(String supplierId, long resultsFromCache, long resultsFromFuture, long resultsFromSupplier,
+                              long resultsFromStale, long backgroundRefreshes, long refreshAheadRuns,
+                              long supplierErrors, long negativeCacheHits, long resultsFromStaleIfError,
+                              long timeouts, long resultsFromTimeoutFallback, long evictions, long maxConcurrentSuppliers, int concurrencyLimit,
+                              long cachedResultsTTL, String cachedResultsTTLReason, long maxSupplierTime, long maxGetTime, long maxFutureTime,
+                              long totalGetTime, long totalCnt, LatencyHistogram.Snapshot getTimeNanos,
+                              LatencyHistogram.Snapshot supplierTimeNanos, LatencyHistogram.Snapshot futureTimeNanos) {
+            this.supplierId = supplierId;
+            this.resultsFromCache = resultsFromCache;
+            this.resultsFromFuture = resultsFromFuture;
+            this.resultsFromSupplier = resultsFromSupplier;
+            this.resultsFromStale = resultsFromStale;
+            this.backgroundRefreshes = backgroundRefreshes;
+            this.refreshAheadRuns = refreshAheadRuns;
+            this.supplierErrors = supplierErrors;
+            this.negativeCacheHits = negativeCacheHits;
+            this.resultsFromStaleIfError = resultsFromStaleIfError;
+            this.timeouts = timeouts;
+            this.resultsFromTimeoutFallback = resultsFromTimeoutFallback;
+            this.evictions = evictions;
+            this.maxConcurrentSuppliers = maxConcurrentSuppliers;
+            this.concurrencyLimit = concurrencyLimit;
+            this.cachedResultsTTL = cachedResultsTTL;
+            this.cachedResultsTTLReason = cachedResultsTTLReason;
+            this.maxSupplierTime = maxSupplierTime;
+            this.maxGetTime = maxGetTime;
+            this.maxFutureTime = maxFutureTime;
+            this.totalGetTime = totalGetTime;
+            this.totalCnt = totalCnt;
+            this.getTimeNanos = getTimeNanos;
+            this.supplierTimeNanos = supplierTimeNanos;
+            this.futureTimeNanos = futureTimeNanos;
+        }
+
+        public String getSupplierId() {
+            return supplierId;
+        }
+
+        public long getResultsFromCache() {
+            return resultsFromCache;
+        }
+
+        public long getResultsFromFuture() {
+            return resultsFromFuture;
+        }
+
+        public long getResultsFromSupplier() {
+            return resultsFromSupplier;
+        }
+
+        /**
+         * Gets the number of stale results returned while a stale-while-revalidate refresh was pending.  These are
+         * also counted in resultsFromCache or resultsFromFuture.
+         *
+         * @return the results from stale
+         */
+        public long getResultsFromStale() {
+            return resultsFromStale;
+        }
+
+        /**
+         * Gets the number of supplier runs done in the background after a stale-while-revalidate hit.
+         *
+         * @return the background refreshes
+         */
+        public long getBackgroundRefreshes() {
+            return backgroundRefreshes;
+        }
+
+        /**
+         * Gets the number of supplier runs done in the background ahead of expiry.  On-demand supplier runs are
+         * counted in resultsFromSupplier.
+         *
+         * @return the refresh ahead runs
+         */
+        public long getRefreshAheadRuns() {
+            return refreshAheadRuns;
+        }
+
+        /**
+         * Gets the number of supplier runs that threw.
+         *
+         * @return the supplier errors
+         */
+        public long getSupplierErrors() {
+            return supplierErrors;
+        }
+
+        /**
+         * Gets the number of calls answered with a cached failure instead of a supplier run.
+         *
+         * @return the negative cache hits
+         */
+        public long getNegativeCacheHits() {
+            return negativeCacheHits;
+        }
+
+        /**
+         * Gets the number of calls answered with the last good result after a supplier failure.
+         *
+         * @return the results from stale if error
+         */
+        public long getResultsFromStaleIfError() {
+            return resultsFromStaleIfError;
+        }
+
+        /**
+         * Gets the number of deadline-bounded gets that timed out.
+         *
+         * @return the timeouts
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Gets the number of timed out gets answered with the previous result.
+         *
+         * @return the results from timeout fallback
+         */
+        public long getResultsFromTimeoutFallback() {
+            return resultsFromTimeoutFallback;
+        }
+
+        /**
+         * Gets the number of keys a size bounded CachingFunction evicted.
+         *
+         * @return the evictions
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getMaxConcurrentSuppliers() {
+            return maxConcurrentSuppliers;
+        }
+
+        /**
+         * Gets the concurrency limit when the snapshot was taken.
+         *
+         * @return the concurrency limit
+         */
+        public int getConcurrencyLimit() {
+            return concurrencyLimit;
+        }
+
+        /**
+         * Gets the cached results TTL of the current result when the snapshot was taken.
+         *
+         * @return the cached results ttl
+         */
+        public long getCachedResultsTTL() {
+            return cachedResultsTTL;
+        }
+
+        /**
+         * Gets why the cached results TTL was picked.
+         *
+         * @return the cached results ttl reason
+         */
+        public String getCachedResultsTTLReason() {
+            return cachedResultsTTLReason;
+        }
+
+        public long getMaxSupplierTime() {
+            return maxSupplierTime;
+        }
+
+        public long getMaxGetTime() {
+            return maxGetTime;
+        }
+
+        public long getMaxFutureTime() {
+            return maxFutureTime;
+        }
+
+        public long getTotalGetTime() {
+            return totalGetTime;
+        }
+
+        public long getCount() {
+            return totalCnt;
+        }
+
+        /**
+         * Gets the get() latency histogram, in nanoseconds.
+         *
+         * @return the get time histogram
+         */
+        public LatencyHistogram.Snapshot getGetTimeNanos() {
+            return getTimeNanos;
+        }
+
+        /**
+         * Gets the supplier latency histogram, in nanoseconds.
+         *
+         * @return the supplier time histogram
+         */
+        public LatencyHistogram.Snapshot getSupplierTimeNanos() {
+            return supplierTimeNanos;
+        }
+
+        /**
+         * Gets the wait-on-future latency histogram, in nanoseconds.
+         *
+         * @return the future time histogram
+         */
+        public LatencyHistogram.Snapshot getFutureTimeNanos() {
+            return futureTimeNanos;
+        }
+
+        /**
+         * Gets cache hit ratio.
+         *
+         * @return the cache hit ratio
+         */
+        public double getCacheHitRatio() {
+            return totalCnt == 0 ? 0 : (resultsFromCache + resultsFromFuture) / (double) totalCnt;
+        }
+
+        /**
+         * Gets avg get time.
+         *
+         * @return the avg get time
+         */
+        public long getAvgGetTime() {
+            return totalCnt == 0 ? 0 : (totalGetTime / totalCnt);
+        }
+
+        /**
+         * To json string.
+         *
+         * @return the json string
+         */
+        public String toJson() {
+            return "{\"supplierId\":\"" + supplierId + "\",\"count\":" + totalCnt + ",\"resultsFromCache\":" + resultsFromCache +
+                    ",\"resultsFromFuture\":" + resultsFromFuture + ",\"resultsFromSupplier\":" + resultsFromSupplier +
+                    ",\"resultsFromStale\":" + resultsFromStale + ",\"backgroundRefreshes\":" + backgroundRefreshes +
+                    ",\"refreshAheadRuns\":" + refreshAheadRuns + ",\"supplierErrors\":" + supplierErrors +
+                    ",\"negativeCacheHits\":" + negativeCacheHits + ",\"resultsFromStaleIfError\":" + resultsFromStaleIfError +
+                    ",\"timeouts\":" + timeouts + ",\"resultsFromTimeoutFallback\":" + resultsFromTimeoutFallback +
+                    ",\"evictions\":" + evictions +
+                    ",\"cacheHitRatio\":" + String.format("%f", getCacheHitRatio()) +
+                    ",\"maxConcurrentSuppliers\":" + maxConcurrentSuppliers + ",\"concurrencyLimit\":" + concurrencyLimit +
+                    ",\"cachedResultsTTL\":" + cachedResultsTTL + ",\"cachedResultsTTLReason\":\"" + cachedResultsTTLReason + "\"" + ",\"maxSupplierTime\":" + maxSupplierTime + ",\"maxFutureTime\":" + maxFutureTime + ",\"maxGetTime\":" + maxGetTime + ",\"avgGetTime\":" +
+                    getAvgGetTime() + ",\"getTimeNanos\":" + getTimeNanos.toJson() +
+                    ",\"supplierTimeNanos\":" + supplierTimeNanos.toJson() +
+                    ",\"futureTimeNanos\":" + futureTimeNanos.toJson() + "}";
+        }
+    }
+
+    // Striped counters: recording never takes a lock, so concurrent get() calls do not contend on the stats.
+    static class Stats {
         private static final long LIMIT = Long.MAX_VALUE - 100000L;
 
         private final String supplierId;
-        private long resultsFromCache = 0L;
-        private long resultsFromFuture = 0L;
-        private long resultsFromSupplier = 0L;
-        private long maxConcurrentSuppliers = 0L;
-        private long maxSupplierTime = 0L;
-        private long maxGetTime = 0L;
-        private long maxFutureTime = 0L;
-        private long totalGetTime = 0L;
-        private long totalCnt = 0L;
+        private final LongAdder resultsFromCache = new LongAdder();
+        private final LongAdder resultsFromFuture = new LongAdder();
+        private final LongAdder resultsFromSupplier = new LongAdder();
+        private final LongAdder resultsFromStale = new LongAdder();
+        private final LongAdder backgroundRefreshes = new LongAdder();
+        private final LongAdder refreshAheadRuns = new LongAdder();
+        private final LongAdder supplierErrors = new LongAdder();
+        private final LongAdder negativeCacheHits = new LongAdder();
+        private final LongAdder resultsFromStaleIfError = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder resultsFromTimeoutFallback = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAccumulator maxConcurrentSuppliers = new LongAccumulator(Math::max, 0L);
+        private final LongAccumulator maxSupplierTime = new LongAccumulator(Math::max, 0L);
+        private final LongAccumulator maxGetTime = new LongAccumulator(Math::max, 0L);
+        private final LongAccumulator maxFutureTime = new LongAccumulator(Math::max, 0L);
+        private final LongAdder totalGetTime = new LongAdder();
+        private final LongAdder totalCnt = new LongAdder();
+        private final LatencyHistogram getTimeNanos = new LatencyHistogram();
+        private final LatencyHistogram supplierTimeNanos = new LatencyHistogram();
+        private final LatencyHistogram futureTimeNanos = new LatencyHistogram();
 
         /**
          * Instantiates a new Stats.
@@ -255,77 +1212,204 @@ public class CachingSupplier<T> implements Supplier<T> {
         /**
          * Increment result from cache.
          */
-        public synchronized void incrementResultFromCache() {
-            handleRollover();
-            resultsFromCache++;
+        public void incrementResultFromCache() {
+            resultsFromCache.increment();
         }
 
         /**
          * Increment result from caching supplier.
          */
-        public synchronized void incrementResultFromCachingSupplier() {
-            handleRollover();
-            resultsFromFuture++;
+        public void incrementResultFromCachingSupplier() {
+            resultsFromFuture.increment();
         }
 
         /**
          * Increment result from supplier.
          */
-        public synchronized void incrementResultFromSupplier() {
-            handleRollover();
-            resultsFromSupplier++;
+        public void incrementResultFromSupplier() {
+            resultsFromSupplier.increment();
         }
 
         /**
-         * Handle rollover.
+         * Increment result from stale.  Stale results are served from the cache, so this also counts as a cache hit.
          */
-        public synchronized void handleRollover() {
+        public void incrementResultFromStale() {
+            resultsFromStale.increment();
+            resultsFromCache.increment();
+        }
+
+        /**
+         * Increment supplier error.
+         */
+        public void incrementSupplierError() {
+            supplierErrors.increment();
+        }
+
+        /**
+         * Increment negative cache hit.
+         */
+        public void incrementNegativeCacheHit() {
+            negativeCacheHits.increment();
+        }
+
+        /**
+         * Increment result from stale if error.
+         */
+        public void incrementResultFromStaleIfError() {
+            resultsFromStaleIfError.increment();
+        }
+
+        /**
+         * Increment timeout.
+         */
+        public void incrementTimeout() {
+            timeouts.increment();
+        }
+
+        /**
+         * Increment result from timeout fallback.
+         */
+        public void incrementResultFromTimeoutFallback() {
+            resultsFromTimeoutFallback.increment();
+        }
+
+        /**
+         * Increment eviction.  Counted for the keys a size bounded CachingFunction evicts.
+         */
+        public void incrementEviction() {
+            evictions.increment();
+        }
+
+        /**
+         * Record a supplier run done on the supplier executor.
+         *
+         * @param supplierNanos the supplier time in nanoseconds
+         * @param action        why the supplier was run
+         */
+        private void recordSupplierRun(long supplierNanos, Action action) {
+            if (action == Action.refreshAhead) {
+                refreshAheadRuns.increment();
+            } else if (action == Action.refresh) {
+                backgroundRefreshes.increment();
+            }
+            maxSupplierTime.accumulate(TimeUnit.NANOSECONDS.toMillis(supplierNanos));
+            supplierTimeNanos.record(supplierNanos);
+        }
+
+        /**
+         * Gets the number of gets served from the cache or a shared future.
+         *
+         * @return the hits
+         */
+        private long getHits() {
+            return resultsFromCache.sum() + resultsFromFuture.sum();
+        }
+
+        /**
+         * Gets the number of gets.
+         *
+         * @return the total
+         */
+        private long getTotal() {
+            return totalCnt.sum();
+        }
+
+        /**
+         * Handle rollover.  Summing the striped counters is not free, so this is checked when a snapshot is taken
+         * rather than on every increment.
+         *
+         * @param snapshot the snapshot just taken
+         */
+        private void handleRollover(StatsSnapshot snapshot) {
             if (
-                    resultsFromCache > LIMIT ||
-                    resultsFromFuture > LIMIT ||
-                    resultsFromSupplier > LIMIT ||
-                    totalGetTime > LIMIT ||
-                    maxConcurrentSuppliers > LIMIT ||
-                    totalCnt > LIMIT
+                    snapshot.resultsFromCache > LIMIT ||
+                    snapshot.resultsFromFuture > LIMIT ||
+                    snapshot.resultsFromSupplier > LIMIT ||
+                    snapshot.totalGetTime > LIMIT ||
+                    snapshot.maxConcurrentSuppliers > LIMIT ||
+                    snapshot.totalCnt > LIMIT
             ) {
                 resetStats();
             }
         }
 
-        public synchronized void resetStats() {
-            resultsFromCache = 0L;
-            resultsFromFuture = 0L;
-            resultsFromSupplier = 0L;
-            maxConcurrentSuppliers = 0L;
-            maxSupplierTime = 0L;
-            maxFutureTime = 0L;
-            maxGetTime = 0L;
-            totalGetTime = 0L;
-            totalCnt = 0L;
+        public void resetStats() {
+            resultsFromCache.reset();
+            resultsFromFuture.reset();
+            resultsFromSupplier.reset();
+            resultsFromStale.reset();
+            backgroundRefreshes.reset();
+            refreshAheadRuns.reset();
+            supplierErrors.reset();
+            negativeCacheHits.reset();
+            resultsFromStaleIfError.reset();
+            timeouts.reset();
+            resultsFromTimeoutFallback.reset();
+            evictions.reset();
+            maxConcurrentSuppliers.reset();
+            maxSupplierTime.reset();
+            maxFutureTime.reset();
+            maxGetTime.reset();
+            totalGetTime.reset();
+            totalCnt.reset();
+            getTimeNanos.reset();
+            supplierTimeNanos.reset();
+            futureTimeNanos.reset();
         }
 
         /**
-         * Gets json stats.
+         * Snapshot the stats.  With reset, each counter is read and cleared in one step so no increments are lost
+         * between the read and the reset.
          *
-         * @return the json stats
+         * @param reset            reset the counters as they are read
+         * @param concurrencyLimit the current concurrency limit
+         * @param cachedResultsTTL the cached results TTL of the current result
+         * @param ttlReason        why that TTL was picked
+         * @return the stats snapshot
          */
-        public synchronized String getJsonStats() {
-            return "{\"supplierId\":\"" + supplierId + "\",\"count\":" + totalCnt + ",\"resultsFromCache\":" + resultsFromCache +
-                    ",\"resultsFromFuture\":" + resultsFromFuture + ",\"resultsFromSupplier\":" + resultsFromSupplier +
-                    ",\"cacheHitRatio\":" + String.format("%f", (totalCnt == 0 ? 0 : (resultsFromCache + resultsFromFuture) / (double) totalCnt)) +
-                    ",\"maxConcurrentSuppliers\":" + maxConcurrentSuppliers + ",\"maxSupplierTime\":" + maxSupplierTime + ",\"maxFutureTime\":" + maxFutureTime + ",\"maxGetTime\":" + maxGetTime + ",\"avgGetTime\":" +
-                    (totalCnt == 0 ? 0 : (totalGetTime / totalCnt)) + "}";
-        }
-
-        @SuppressWarnings("ManualMinMaxCalculation")
-        private synchronized void updateStats(long supplierTime, long futureTime, long getCallTime, long concurrentSupplierCount) {
-            handleRollover();
-            maxSupplierTime = supplierTime == -1 || maxSupplierTime > supplierTime ? maxSupplierTime : supplierTime;
-            maxFutureTime = futureTime == -1 || maxFutureTime > futureTime ? maxFutureTime : futureTime;
-            maxGetTime = maxGetTime > getCallTime ? maxGetTime : getCallTime;
-            maxConcurrentSuppliers = maxConcurrentSuppliers < concurrentSupplierCount ? concurrentSupplierCount : maxConcurrentSuppliers;
-            totalCnt++;
-            totalGetTime += getCallTime;
+        public StatsSnapshot snapshot(boolean reset, int concurrencyLimit, long cachedResultsTTL, String ttlReason) {
+            StatsSnapshot snapshot;
+            if (reset) {
+                snapshot = new StatsSnapshot(supplierId, resultsFromCache.sumThenReset(), resultsFromFuture.sumThenReset(),
+                        resultsFromSupplier.sumThenReset(), resultsFromStale.sumThenReset(),
+                        backgroundRefreshes.sumThenReset(), refreshAheadRuns.sumThenReset(),
+                        supplierErrors.sumThenReset(), negativeCacheHits.sumThenReset(),
+                        resultsFromStaleIfError.sumThenReset(), timeouts.sumThenReset(),
+                        resultsFromTimeoutFallback.sumThenReset(), evictions.sumThenReset(),
+                        maxConcurrentSuppliers.getThenReset(), concurrencyLimit, cachedResultsTTL, ttlReason,
+                        maxSupplierTime.getThenReset(), maxGetTime.getThenReset(), maxFutureTime.getThenReset(),
+                        totalGetTime.sumThenReset(), totalCnt.sumThenReset(), getTimeNanos.snapshot(true),
+                        supplierTimeNanos.snapshot(true), futureTimeNanos.snapshot(true));
+            } else {
+                snapshot = new StatsSnapshot(supplierId, resultsFromCache.sum(), resultsFromFuture.sum(),
+                        resultsFromSupplier.sum(), resultsFromStale.sum(), backgroundRefreshes.sum(), refreshAheadRuns.sum(),
+                        supplierErrors.sum(), negativeCacheHits.sum(), resultsFromStaleIfError.sum(),
+                        timeouts.sum(), resultsFromTimeoutFallback.sum(), evictions.sum(),
+                        maxConcurrentSuppliers.get(), concurrencyLimit, cachedResultsTTL, ttlReason,
+                        maxSupplierTime.get(), maxGetTime.get(),
+                        maxFutureTime.get(), totalGetTime.sum(), totalCnt.sum(), getTimeNanos.snapshot(false),
+                        supplierTimeNanos.snapshot(false), futureTimeNanos.snapshot(false));
+                handleRollover(snapshot);
+            }
+            return snapshot;
+        }
+
+        // Latencies arrive in nanoseconds: the histograms keep full resolution, the max/avg fields stay in millis.
+        private void updateStats(long supplierNanos, long futureNanos, long getCallNanos, long concurrentSupplierCount) {
+            long getCallTime = TimeUnit.NANOSECONDS.toMillis(getCallNanos);
+            if (supplierNanos != -1) {
+                maxSupplierTime.accumulate(TimeUnit.NANOSECONDS.toMillis(supplierNanos));
+                supplierTimeNanos.record(supplierNanos);
+            }
+            if (futureNanos != -1) {
+                maxFutureTime.accumulate(TimeUnit.NANOSECONDS.toMillis(futureNanos));
+                futureTimeNanos.record(futureNanos);
+            }
+            maxGetTime.accumulate(getCallTime);
+            getTimeNanos.record(getCallNanos);
+            maxConcurrentSuppliers.accumulate(concurrentSupplierCount);
+            totalCnt.increment();
+            totalGetTime.add(getCallTime);
         }
 
     }
@@ -1,7 +1,16 @@
 package com.marvinware;
 
+import com.marvinware.utils.AimdConcurrencyLimit;
+import com.marvinware.utils.GradientConcurrencyLimit;
+import com.marvinware.utils.VirtualThreads;
+
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The interface Supplier config.
@@ -18,6 +27,115 @@ public interface CachingSupplierConfig {
         return 100;
     }
 
+    /**
+     * Gets cached results ttl jitter.  Each new result's TTL is reduced by a random amount up to this many
+     * milliseconds, so that suppliers, and nodes, that started together do not all expire together.  The larger of
+     * this and the jitter percent is used.  0 turns it off.
+     *
+     * @return the cached results ttl jitter
+     */
+    default long getCachedResultsTTLJitter() {
+        return 0;
+    }
+
+    /**
+     * Gets cached results ttl jitter percent.  Like the cached results TTL jitter, but as a percentage of the TTL.
+     *
+     * @return the cached results ttl jitter percent
+     */
+    default double getCachedResultsTTLJitterPercent() {
+        return 0;
+    }
+
+    /**
+     * Gets the TTL jitter seed.  The default is derived from the host name and process id, so that every node
+     * jitters differently.
+     *
+     * @return the ttl jitter seed
+     */
+    default long getTTLJitterSeed() {
+        return NodeSeed.VALUE;
+    }
+
+    /**
+     * Is adaptive ttl enabled boolean.  When enabled, each new result's TTL is picked from the supplier latency, the
+     * hit ratio and upstream overload, within the min and max cached results TTL, instead of being the cached results
+     * TTL.  The cached results TTL is still the TTL for an upstream answering in the reference latency.
+     *
+     * @return the boolean
+     */
+    default boolean isAdaptiveTTLEnabled() {
+        return false;
+    }
+
+    /**
+     * Gets the shortest TTL the adaptive TTL picks.
+     *
+     * @return the min cached results ttl
+     */
+    default long getMinCachedResultsTTL() {
+        return getCachedResultsTTL();
+    }
+
+    /**
+     * Gets the longest TTL the adaptive TTL picks, i.e. the most staleness allowed.
+     *
+     * @return the max cached results ttl
+     */
+    default long getMaxCachedResultsTTL() {
+        return getCachedResultsTTL();
+    }
+
+    /**
+     * Gets the supplier latency, in milliseconds, at which the adaptive TTL uses the cached results TTL as is.
+     *
+     * @return the adaptive ttl reference latency
+     */
+    default long getAdaptiveTTLReferenceLatency() {
+        return 100;
+    }
+
+    /**
+     * Gets maximum size.  The most keys a CachingFunction holds; past it, keys are evicted by W-TinyLFU.  0 means no
+     * bound.
+     *
+     * @return the maximum size
+     */
+    default long getMaximumSize() {
+        return 0;
+    }
+
+    /**
+     * Gets host coordination directory.  When set, suppliers registered with a serializer coordinate with the other
+     * processes on the host through lease files in this directory, e.g. /dev/shm/myservice, so only one process runs
+     * each supplier and the others read its result.  null turns it off.
+     *
+     * @return the host coordination directory
+     */
+    default String getHostCoordinationDirectory() {
+        return null;
+    }
+
+    /**
+     * Gets host lease time.  How long, in milliseconds, a process may hold a supplier's lease before other processes
+     * take it over, e.g. after the holder died.
+     *
+     * @return the host lease time
+     */
+    default long getHostLeaseTime() {
+        return 30000;
+    }
+
+    /**
+     * Gets host result slot size.  The largest serialized result, in bytes, that is shared through a lease file; a
+     * larger result is only cached by the process that fetched it.  Read once, when the lease file is mapped.
+     *
+     * @return the host result slot size
+     */
+    default int getHostResultSlotSize() {
+        return 1024 * 1024;
+    }
+
     /**
      * Gets max concurrent running suppliers.
      *
@@ -27,6 +145,44 @@ public interface CachingSupplierConfig {
         return 10;
     }
 
+    /**
+     * New concurrency limit.  Called once per CachingSupplier; the limit it returns decides how many supplier runs
+     * may be in flight at once, in place of a fixed max concurrent running suppliers.  The default is that fixed
+     * limit.
+     *
+     * @return the concurrency limit
+     */
+    default ConcurrencyLimit newConcurrencyLimit() {
+        return ConcurrencyLimit.fixed(this);
+    }
+
+    /**
+     * Gets the lowest limit an adaptive concurrency limit backs off to.
+     *
+     * @return the concurrency limit min
+     */
+    default int getConcurrencyLimitMin() {
+        return 1;
+    }
+
+    /**
+     * Gets the highest limit an adaptive concurrency limit grows to.
+     *
+     * @return the concurrency limit max
+     */
+    default int getConcurrencyLimitMax() {
+        return 100;
+    }
+
+    /**
+     * Gets the supplier latency above which the AIMD concurrency limit treats the upstream as overloaded.
+     *
+     * @return the concurrency limit latency threshold
+     */
+    default long getConcurrencyLimitLatencyThreshold() {
+        return 1000;
+    }
+
     /**
      * Gets new supplier stagger delay.
      *
@@ -37,7 +193,8 @@ public interface CachingSupplierConfig {
     }
 
     /**
-     * Is cache cleanup thread enabled boolean.
+     * Is cache cleanup thread enabled boolean.  When enabled, managers and caching functions clear each cached result
+     * when it expires, from a timer wheel the result schedules its expiry on.
      *
      * @return the boolean
      */
@@ -49,11 +206,105 @@ public interface CachingSupplierConfig {
      * Polling period for cleanup thread long.
      *
      * @return the long
+     * @deprecated expiry is now scheduled per cached result rather than polled; this value is no longer used
      */
+    @Deprecated
     default long pollingPeriodForCleanupThread() {
         return 5000;
     }
 
+    /**
+     * Gets stale while revalidate time.  For this long after the cached results TTL has passed, a stale result is
+     * still returned immediately while a single background refresh runs.  0 turns it off.
+     *
+     * @return the stale while revalidate time
+     */
+    default long getStaleWhileRevalidateTime() {
+        return 0;
+    }
+
+    /**
+     * Gets refresh ahead factor.  Once a cached result reaches this fraction of the cached results TTL, a hot
+     * supplier starts a background refresh so a fresh result is in place before the old one expires.  0 turns it
+     * off; e.g. 0.8 refreshes at 80% of the TTL.
+     *
+     * @return the refresh ahead factor
+     */
+    default double getRefreshAheadFactor() {
+        return 0;
+    }
+
+    /**
+     * Gets refresh ahead access window.  A supplier is hot, and refreshed ahead of expiry, only if it was accessed
+     * within this window.  Idle suppliers are left to expire and be cleared.
+     *
+     * @return the refresh ahead access window
+     */
+    default long getRefreshAheadAccessWindow() {
+        return getCachedResultsTTL();
+    }
+
+    /**
+     * Gets negative cached results ttl.  For this long after a supplier run throws, callers get the same failure
+     * without the supplier being called again.  0 turns it off.
+     *
+     * @return the negative cached results ttl
+     */
+    default long getNegativeCachedResultsTTL() {
+        return 0;
+    }
+
+    /**
+     * Gets stale if error time.  For this long after the cached results TTL has passed, the last good result is
+     * returned instead of a supplier failure.  0 only returns it while it is still fresh.
+     *
+     * @return the stale if error time
+     */
+    default long getStaleIfErrorTime() {
+        return 0;
+    }
+
+    /**
+     * Is virtual threads enabled boolean.  When enabled, and the JVM supports them, suppliers that are not run inline
+     * by the calling thread run on virtual threads.
+     *
+     * @return the boolean
+     */
+    default boolean isVirtualThreadsEnabled() {
+        return false;
+    }
+
+    /**
+     * Is coarse clock enabled boolean.  When enabled, the default ticker is the coarse ticker, refreshed about once a
+     * millisecond by one background thread, which makes each time read a single volatile load for very hot
+     * suppliers.
+     *
+     * @return the boolean
+     */
+    default boolean isCoarseClockEnabled() {
+        return false;
+    }
+
+    /**
+     * Gets the ticker all staleness, stagger and result age decisions are timed with.  Replace it to drive time in
+     * tests and simulations.
+     *
+     * @return the ticker
+     */
+    default Ticker getTicker() {
+        return isCoarseClockEnabled() ? Ticker.coarseTicker() : Ticker.systemTicker();
+    }
+
+    /**
+     * Gets the executor that runs suppliers which are not run inline by the calling thread.
+     *
+     * @return the supplier executor
+     */
+    default Executor getSupplierExecutor() {
+        return isVirtualThreadsEnabled() && VirtualThreads.isAvailable() ?
+                DefaultSupplierExecutor.Virtual.INSTANCE : DefaultSupplierExecutor.INSTANCE;
+    }
+
     /**
      * Is caching enabled boolean.
      *
@@ -64,52 +315,651 @@ public interface CachingSupplierConfig {
     }
 
 
+    /**
+     * Lazily created, shared executors used when no supplier executor is configured: a daemon thread pool, or one
+     * virtual thread per supplier run.
+     */
+    final class DefaultSupplierExecutor {
+        static final ExecutorService INSTANCE = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName(CachingSupplierConfig.class.getName() + ".SupplierExecutor");
+            return t;
+        });
+
+        private DefaultSupplierExecutor() { }
+
+        static final class Virtual {
+            static final ExecutorService INSTANCE = VirtualThreads.newVirtualThreadPerTaskExecutor();
+
+            private Virtual() { }
+        }
+    }
+
+    /**
+     * Per node seed: a hash of the host name and process id.
+     */
+    final class NodeSeed {
+        static final long VALUE = compute();
+
+        private NodeSeed() { }
+
+        private static long compute() {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (IOException | RuntimeException e) {
+                host = String.valueOf(System.getenv("HOSTNAME"));
+            }
+            return ((long) host.hashCode() << 32) ^ ProcessHandle.current().pid();
+        }
+    }
+
+    /**
+     * Config read from properties, e.g. a java.util.Properties, with keys formatted as prefix + key constant.
+     * <p>
+     * The properties are parsed once into an immutable {@link Snapshot}, so the accessors called on every get() are
+     * plain field reads.  reload() parses new properties and swaps the snapshot atomically, so TTLs and limits can
+     * be retuned while running; suppliers use the new values from their next fetch.  The settings that pick an
+     * implementation (concurrency limit type, adaptive TTL, coarse clock, cache cleanup, maximum size) are read when a
+     * supplier or function is created.
+     */
     class ConfigProperties implements CachingSupplierConfig {
-        private final Map<Object, Object> properties;
         private final String prefix;
+        private volatile Snapshot snapshot;
 
         public static final String CachedResultsTTL = KEYS_PREFIX + "CachedResultsTTL";
         public static final String MaxConcurrentRunningSuppliers = KEYS_PREFIX + "MaxConcurrentRunningSuppliers";
         public static final String NewSupplierStaggerDelay = KEYS_PREFIX + "NewSupplierStaggerDelay";
         public static final String CacheCleanupThreadEnabled = KEYS_PREFIX + "CacheCleanupThreadEnabled";
         public static final String PollingPeriodForCleanupThread = KEYS_PREFIX + "PollingPeriodForCleanupThread";
+        public static final String StaleWhileRevalidateTime = KEYS_PREFIX + "StaleWhileRevalidateTime";
+        public static final String RefreshAheadFactor = KEYS_PREFIX + "RefreshAheadFactor";
+        public static final String RefreshAheadAccessWindow = KEYS_PREFIX + "RefreshAheadAccessWindow";
+        public static final String VirtualThreadsEnabled = KEYS_PREFIX + "VirtualThreadsEnabled";
+        public static final String NegativeCachedResultsTTL = KEYS_PREFIX + "NegativeCachedResultsTTL";
+        public static final String StaleIfErrorTime = KEYS_PREFIX + "StaleIfErrorTime";
+        public static final String CachedResultsTTLJitter = KEYS_PREFIX + "CachedResultsTTLJitter";
+        public static final String CachedResultsTTLJitterPercent = KEYS_PREFIX + "CachedResultsTTLJitterPercent";
+        public static final String TTLJitterSeed = KEYS_PREFIX + "TTLJitterSeed";
+        public static final String AdaptiveTTLEnabled = KEYS_PREFIX + "AdaptiveTTLEnabled";
+        public static final String MinCachedResultsTTL = KEYS_PREFIX + "MinCachedResultsTTL";
+        public static final String MaxCachedResultsTTL = KEYS_PREFIX + "MaxCachedResultsTTL";
+        public static final String AdaptiveTTLReferenceLatency = KEYS_PREFIX + "AdaptiveTTLReferenceLatency";
+        public static final String CoarseClockEnabled = KEYS_PREFIX + "CoarseClockEnabled";
+        public static final String MaximumSize = KEYS_PREFIX + "MaximumSize";
+        public static final String HostCoordinationDirectory = KEYS_PREFIX + "HostCoordinationDirectory";
+        public static final String HostLeaseTime = KEYS_PREFIX + "HostLeaseTime";
+        public static final String HostResultSlotSize = KEYS_PREFIX + "HostResultSlotSize";
+        public static final String ConcurrencyLimitType = KEYS_PREFIX + "ConcurrencyLimitType";
+        public static final String ConcurrencyLimitMin = KEYS_PREFIX + "ConcurrencyLimitMin";
+        public static final String ConcurrencyLimitMax = KEYS_PREFIX + "ConcurrencyLimitMax";
+        public static final String ConcurrencyLimitLatencyThreshold = KEYS_PREFIX + "ConcurrencyLimitLatencyThreshold";
 
         public ConfigProperties(String prefix, @SuppressWarnings("rawtypes") Map properties) {
             this.prefix = prefix;
-            this.properties = new HashMap<Object, Object>(properties);
+            this.snapshot = new Snapshot(new Parser(prefix, properties));
+        }
+
+        /**
+         * Parse new properties and swap them in.  If they do not parse, the current snapshot is kept.
+         *
+         * @param properties the properties
+         * @return the new snapshot
+         * @throws IllegalArgumentException if a required key is missing or a value does not parse
+         */
+        public Snapshot reload(@SuppressWarnings("rawtypes") Map properties) {
+            Snapshot newSnapshot = new Snapshot(new Parser(prefix, properties));
+            snapshot = newSnapshot;
+            return newSnapshot;
         }
 
-        private String formatConfigKey(String key) {
-            return (prefix != null && !prefix.trim().isEmpty() ?
-                    (prefix.endsWith(".") ? prefix : prefix + ".") :
-                    "") + key;
+        /**
+         * Gets the current snapshot.
+         *
+         * @return the snapshot
+         */
+        public Snapshot getSnapshot() {
+            return snapshot;
         }
 
         @Override
         public long getCachedResultsTTL() {
-            return Long.parseLong(properties.get(formatConfigKey(CachedResultsTTL)).toString());
+            return snapshot.getCachedResultsTTL();
         }
 
         @Override
         public int getMaxConcurrentRunningSuppliers() {
-            return Integer.parseInt(properties.get(formatConfigKey(MaxConcurrentRunningSuppliers)).toString());
+            return snapshot.getMaxConcurrentRunningSuppliers();
         }
 
         @Override
         public long getNewSupplierStaggerDelay() {
-            return Long.parseLong(properties.get(formatConfigKey(NewSupplierStaggerDelay)).toString());
+            return snapshot.getNewSupplierStaggerDelay();
         }
 
         @Override
         public boolean isCacheCleanupThreadEnabled() {
-            return Boolean.parseBoolean(properties.get(formatConfigKey(CacheCleanupThreadEnabled)).toString());
+            return snapshot.isCacheCleanupThreadEnabled();
         }
 
+        @Deprecated
         @Override
         public long pollingPeriodForCleanupThread() {
-            return Long.parseLong(properties.get(formatConfigKey(PollingPeriodForCleanupThread)).toString());
+            return snapshot.pollingPeriodForCleanupThread();
+        }
+
+        @Override
+        public long getStaleWhileRevalidateTime() {
+            return snapshot.getStaleWhileRevalidateTime();
+        }
+
+        @Override
+        public double getRefreshAheadFactor() {
+            return snapshot.getRefreshAheadFactor();
+        }
+
+        @Override
+        public long getRefreshAheadAccessWindow() {
+            return snapshot.getRefreshAheadAccessWindow();
+        }
+
+        @Override
+        public boolean isVirtualThreadsEnabled() {
+            return snapshot.isVirtualThreadsEnabled();
+        }
+
+        @Override
+        public long getNegativeCachedResultsTTL() {
+            return snapshot.getNegativeCachedResultsTTL();
+        }
+
+        @Override
+        public long getStaleIfErrorTime() {
+            return snapshot.getStaleIfErrorTime();
+        }
+
+        @Override
+        public long getCachedResultsTTLJitter() {
+            return snapshot.getCachedResultsTTLJitter();
+        }
+
+        @Override
+        public double getCachedResultsTTLJitterPercent() {
+            return snapshot.getCachedResultsTTLJitterPercent();
+        }
+
+        @Override
+        public boolean isAdaptiveTTLEnabled() {
+            return snapshot.isAdaptiveTTLEnabled();
         }
 
+        @Override
+        public long getMinCachedResultsTTL() {
+            return snapshot.getMinCachedResultsTTL();
+        }
+
+        @Override
+        public long getMaxCachedResultsTTL() {
+            return snapshot.getMaxCachedResultsTTL();
+        }
+
+        @Override
+        public long getAdaptiveTTLReferenceLatency() {
+            return snapshot.getAdaptiveTTLReferenceLatency();
+        }
+
+        @Override
+        public boolean isCoarseClockEnabled() {
+            return snapshot.isCoarseClockEnabled();
+        }
+
+        @Override
+        public long getMaximumSize() {
+            return snapshot.getMaximumSize();
+        }
+
+        @Override
+        public String getHostCoordinationDirectory() {
+            return snapshot.getHostCoordinationDirectory();
+        }
+
+        @Override
+        public long getHostLeaseTime() {
+            return snapshot.getHostLeaseTime();
+        }
+
+        @Override
+        public int getHostResultSlotSize() {
+            return snapshot.getHostResultSlotSize();
+        }
+
+        @Override
+        public int getConcurrencyLimitMin() {
+            return snapshot.getConcurrencyLimitMin();
+        }
+
+        @Override
+        public int getConcurrencyLimitMax() {
+            return snapshot.getConcurrencyLimitMax();
+        }
+
+        @Override
+        public long getConcurrencyLimitLatencyThreshold() {
+            return snapshot.getConcurrencyLimitLatencyThreshold();
+        }
+
+        @Override
+        public long getTTLJitterSeed() {
+            return snapshot.getTTLJitterSeed();
+        }
+
+        /**
+         * New concurrency limit, chosen by the ConcurrencyLimitType key: fixed (the default), aimd or gradient.
+         * Adaptive limits start at the max concurrent running suppliers.  A fixed limit follows reloads.
+         *
+         * @return the concurrency limit
+         */
+        @Override
+        public ConcurrencyLimit newConcurrencyLimit() {
+            return newConcurrencyLimit(this, snapshot.concurrencyLimitType);
+        }
+
+        private static ConcurrencyLimit newConcurrencyLimit(CachingSupplierConfig config, String type) {
+            switch (type) {
+                case "aimd":
+                    return new AimdConcurrencyLimit(config.getMaxConcurrentRunningSuppliers(),
+                            config.getConcurrencyLimitMin(), config.getConcurrencyLimitMax(),
+                            config.getConcurrencyLimitLatencyThreshold());
+                case "gradient":
+                    return new GradientConcurrencyLimit(config.getMaxConcurrentRunningSuppliers(),
+                            config.getConcurrencyLimitMin(), config.getConcurrencyLimitMax());
+                default:
+                    return ConcurrencyLimit.fixed(config);
+            }
+        }
+
+        /**
+         * Immutable, parsed copy of the properties.  It is a complete config of its own.
+         */
+        public static final class Snapshot implements CachingSupplierConfig {
+            private final long cachedResultsTTL;
+            private final int maxConcurrentRunningSuppliers;
+            private final long newSupplierStaggerDelay;
+            private final boolean cacheCleanupThreadEnabled;
+            private final long pollingPeriodForCleanupThread;
+            private final long staleWhileRevalidateTime;
+            private final double refreshAheadFactor;
+            private final long refreshAheadAccessWindow;
+            private final boolean virtualThreadsEnabled;
+            private final long negativeCachedResultsTTL;
+            private final long staleIfErrorTime;
+            private final long cachedResultsTTLJitter;
+            private final double cachedResultsTTLJitterPercent;
+            private final boolean adaptiveTTLEnabled;
+            private final long minCachedResultsTTL;
+            private final long maxCachedResultsTTL;
+            private final long adaptiveTTLReferenceLatency;
+            private final boolean coarseClockEnabled;
+            private final long maximumSize;
+            private final String hostCoordinationDirectory;
+            private final long hostLeaseTime;
+            private final int hostResultSlotSize;
+            private final int concurrencyLimitMin;
+            private final int concurrencyLimitMax;
+            private final long concurrencyLimitLatencyThreshold;
+            private final String concurrencyLimitType;
+            private final Long ttlJitterSeed;
+
+            private Snapshot(Parser parser) {
+                try {
+                    this.cachedResultsTTL = parser.getCachedResultsTTL();
+                    this.maxConcurrentRunningSuppliers = parser.getMaxConcurrentRunningSuppliers();
+                    this.newSupplierStaggerDelay = parser.getNewSupplierStaggerDelay();
+                    this.cacheCleanupThreadEnabled = parser.isCacheCleanupThreadEnabled();
+                    this.pollingPeriodForCleanupThread = parser.pollingPeriodForCleanupThread();
+                    this.staleWhileRevalidateTime = parser.getStaleWhileRevalidateTime();
+                    this.refreshAheadFactor = parser.getRefreshAheadFactor();
+                    this.refreshAheadAccessWindow = parser.getRefreshAheadAccessWindow();
+                    this.virtualThreadsEnabled = parser.isVirtualThreadsEnabled();
+                    this.negativeCachedResultsTTL = parser.getNegativeCachedResultsTTL();
+                    this.staleIfErrorTime = parser.getStaleIfErrorTime();
+                    this.cachedResultsTTLJitter = parser.getCachedResultsTTLJitter();
+                    this.cachedResultsTTLJitterPercent = parser.getCachedResultsTTLJitterPercent();
+                    this.adaptiveTTLEnabled = parser.isAdaptiveTTLEnabled();
+                    this.minCachedResultsTTL = parser.getMinCachedResultsTTL();
+                    this.maxCachedResultsTTL = parser.getMaxCachedResultsTTL();
+                    this.adaptiveTTLReferenceLatency = parser.getAdaptiveTTLReferenceLatency();
+                    this.coarseClockEnabled = parser.isCoarseClockEnabled();
+                    this.maximumSize = parser.getMaximumSize();
+                    this.hostCoordinationDirectory = parser.getHostCoordinationDirectory();
+                    this.hostLeaseTime = parser.getHostLeaseTime();
+                    this.hostResultSlotSize = parser.getHostResultSlotSize();
+                    this.concurrencyLimitMin = parser.getConcurrencyLimitMin();
+                    this.concurrencyLimitMax = parser.getConcurrencyLimitMax();
+                    this.concurrencyLimitLatencyThreshold = parser.getConcurrencyLimitLatencyThreshold();
+                    this.concurrencyLimitType = parser.getConcurrencyLimitType();
+                    this.ttlJitterSeed = parser.getTTLJitterSeedOrNull();
+                } catch (NullPointerException e) {
+                    throw new IllegalArgumentException("Missing required config key with prefix: " + parser.prefix, e);
+                }
+            }
+
+            @Override
+            public long getCachedResultsTTL() {
+                return cachedResultsTTL;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return maxConcurrentRunningSuppliers;
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return newSupplierStaggerDelay;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return cacheCleanupThreadEnabled;
+            }
+
+            @Deprecated
+            @Override
+            public long pollingPeriodForCleanupThread() {
+                return pollingPeriodForCleanupThread;
+            }
+
+            @Override
+            public long getStaleWhileRevalidateTime() {
+                return staleWhileRevalidateTime;
+            }
+
+            @Override
+            public double getRefreshAheadFactor() {
+                return refreshAheadFactor;
+            }
+
+            @Override
+            public long getRefreshAheadAccessWindow() {
+                return refreshAheadAccessWindow;
+            }
+
+            @Override
+            public boolean isVirtualThreadsEnabled() {
+                return virtualThreadsEnabled;
+            }
+
+            @Override
+            public long getNegativeCachedResultsTTL() {
+                return negativeCachedResultsTTL;
+            }
+
+            @Override
+            public long getStaleIfErrorTime() {
+                return staleIfErrorTime;
+            }
+
+            @Override
+            public long getCachedResultsTTLJitter() {
+                return cachedResultsTTLJitter;
+            }
+
+            @Override
+            public double getCachedResultsTTLJitterPercent() {
+                return cachedResultsTTLJitterPercent;
+            }
+
+            @Override
+            public boolean isAdaptiveTTLEnabled() {
+                return adaptiveTTLEnabled;
+            }
+
+            @Override
+            public long getMinCachedResultsTTL() {
+                return minCachedResultsTTL;
+            }
+
+            @Override
+            public long getMaxCachedResultsTTL() {
+                return maxCachedResultsTTL;
+            }
+
+            @Override
+            public long getAdaptiveTTLReferenceLatency() {
+                return adaptiveTTLReferenceLatency;
+            }
+
+            @Override
+            public boolean isCoarseClockEnabled() {
+                return coarseClockEnabled;
+            }
+
+            @Override
+            public long getMaximumSize() {
+                return maximumSize;
+            }
+
+            @Override
+            public String getHostCoordinationDirectory() {
+                return hostCoordinationDirectory;
+            }
+
+            @Override
+            public long getHostLeaseTime() {
+                return hostLeaseTime;
+            }
+
+            @Override
+            public int getHostResultSlotSize() {
+                return hostResultSlotSize;
+            }
+
+            @Override
+            public int getConcurrencyLimitMin() {
+                return concurrencyLimitMin;
+            }
+
+            @Override
+            public int getConcurrencyLimitMax() {
+                return concurrencyLimitMax;
+            }
+
+            @Override
+            public long getConcurrencyLimitLatencyThreshold() {
+                return concurrencyLimitLatencyThreshold;
+            }
+
+            @Override
+            public long getTTLJitterSeed() {
+                return ttlJitterSeed != null ? ttlJitterSeed : CachingSupplierConfig.super.getTTLJitterSeed();
+            }
+
+            @Override
+            public ConcurrencyLimit newConcurrencyLimit() {
+                return ConfigProperties.newConcurrencyLimit(this, concurrencyLimitType);
+            }
+        }
+
+        // Reads and parses the raw properties; only used to build a Snapshot
+        private static final class Parser implements CachingSupplierConfig {
+            private final Map<Object, Object> properties;
+            private final String prefix;
+
+            @SuppressWarnings("unchecked")
+            private Parser(String prefix, @SuppressWarnings("rawtypes") Map properties) {
+                this.prefix = prefix;
+                this.properties = new HashMap<Object, Object>(properties);
+            }
+
+            private String formatConfigKey(String key) {
+                return (prefix != null && !prefix.trim().isEmpty() ?
+                        (prefix.endsWith(".") ? prefix : prefix + ".") :
+                        "") + key;
+            }
+
+            @Override
+            public long getCachedResultsTTL() {
+                return Long.parseLong(properties.get(formatConfigKey(CachedResultsTTL)).toString());
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return Integer.parseInt(properties.get(formatConfigKey(MaxConcurrentRunningSuppliers)).toString());
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return Long.parseLong(properties.get(formatConfigKey(NewSupplierStaggerDelay)).toString());
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return Boolean.parseBoolean(properties.get(formatConfigKey(CacheCleanupThreadEnabled)).toString());
+            }
+
+            // Optional keys fall back to the interface default when they are not set
+            @Deprecated
+            @Override
+            public long pollingPeriodForCleanupThread() {
+                Object value = properties.get(formatConfigKey(PollingPeriodForCleanupThread));
+                return value == null ? CachingSupplierConfig.super.pollingPeriodForCleanupThread() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public long getStaleWhileRevalidateTime() {
+                Object value = properties.get(formatConfigKey(StaleWhileRevalidateTime));
+                return value == null ? CachingSupplierConfig.super.getStaleWhileRevalidateTime() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public double getRefreshAheadFactor() {
+                Object value = properties.get(formatConfigKey(RefreshAheadFactor));
+                return value == null ? CachingSupplierConfig.super.getRefreshAheadFactor() : Double.parseDouble(value.toString());
+            }
+
+            @Override
+            public long getRefreshAheadAccessWindow() {
+                Object value = properties.get(formatConfigKey(RefreshAheadAccessWindow));
+                return value == null ? CachingSupplierConfig.super.getRefreshAheadAccessWindow() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public boolean isVirtualThreadsEnabled() {
+                Object value = properties.get(formatConfigKey(VirtualThreadsEnabled));
+                return value == null ? CachingSupplierConfig.super.isVirtualThreadsEnabled() : Boolean.parseBoolean(value.toString());
+            }
+
+            @Override
+            public long getNegativeCachedResultsTTL() {
+                Object value = properties.get(formatConfigKey(NegativeCachedResultsTTL));
+                return value == null ? CachingSupplierConfig.super.getNegativeCachedResultsTTL() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public long getStaleIfErrorTime() {
+                Object value = properties.get(formatConfigKey(StaleIfErrorTime));
+                return value == null ? CachingSupplierConfig.super.getStaleIfErrorTime() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public long getCachedResultsTTLJitter() {
+                Object value = properties.get(formatConfigKey(CachedResultsTTLJitter));
+                return value == null ? CachingSupplierConfig.super.getCachedResultsTTLJitter() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public double getCachedResultsTTLJitterPercent() {
+                Object value = properties.get(formatConfigKey(CachedResultsTTLJitterPercent));
+                return value == null ? CachingSupplierConfig.super.getCachedResultsTTLJitterPercent() : Double.parseDouble(value.toString());
+            }
+
+            String getConcurrencyLimitType() {
+                Object value = properties.get(formatConfigKey(ConcurrencyLimitType));
+                String type = value == null ? "fixed" : value.toString().trim().toLowerCase();
+                if (!type.equals("fixed") && !type.equals("aimd") && !type.equals("gradient")) {
+                    throw new IllegalArgumentException("Unknown " + ConcurrencyLimitType + ": " + value);
+                }
+                return type;
+            }
+
+            Long getTTLJitterSeedOrNull() {
+                Object value = properties.get(formatConfigKey(TTLJitterSeed));
+                return value == null ? null : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public int getConcurrencyLimitMin() {
+                Object value = properties.get(formatConfigKey(ConcurrencyLimitMin));
+                return value == null ? CachingSupplierConfig.super.getConcurrencyLimitMin() : Integer.parseInt(value.toString());
+            }
+
+            @Override
+            public int getConcurrencyLimitMax() {
+                Object value = properties.get(formatConfigKey(ConcurrencyLimitMax));
+                return value == null ? CachingSupplierConfig.super.getConcurrencyLimitMax() : Integer.parseInt(value.toString());
+            }
+
+            @Override
+            public long getConcurrencyLimitLatencyThreshold() {
+                Object value = properties.get(formatConfigKey(ConcurrencyLimitLatencyThreshold));
+                return value == null ? CachingSupplierConfig.super.getConcurrencyLimitLatencyThreshold() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public boolean isAdaptiveTTLEnabled() {
+                Object value = properties.get(formatConfigKey(AdaptiveTTLEnabled));
+                return value == null ? CachingSupplierConfig.super.isAdaptiveTTLEnabled() : Boolean.parseBoolean(value.toString());
+            }
+
+            @Override
+            public long getMinCachedResultsTTL() {
+                Object value = properties.get(formatConfigKey(MinCachedResultsTTL));
+                return value == null ? CachingSupplierConfig.super.getMinCachedResultsTTL() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public long getMaxCachedResultsTTL() {
+                Object value = properties.get(formatConfigKey(MaxCachedResultsTTL));
+                return value == null ? CachingSupplierConfig.super.getMaxCachedResultsTTL() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public long getAdaptiveTTLReferenceLatency() {
+                Object value = properties.get(formatConfigKey(AdaptiveTTLReferenceLatency));
+                return value == null ? CachingSupplierConfig.super.getAdaptiveTTLReferenceLatency() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public boolean isCoarseClockEnabled() {
+                Object value = properties.get(formatConfigKey(CoarseClockEnabled));
+                return value == null ? CachingSupplierConfig.super.isCoarseClockEnabled() : Boolean.parseBoolean(value.toString());
+            }
+
+            @Override
+            public long getMaximumSize() {
+                Object value = properties.get(formatConfigKey(MaximumSize));
+                return value == null ? CachingSupplierConfig.super.getMaximumSize() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public String getHostCoordinationDirectory() {
+                Object value = properties.get(formatConfigKey(HostCoordinationDirectory));
+                return value == null ? CachingSupplierConfig.super.getHostCoordinationDirectory() : value.toString();
+            }
+
+            @Override
+            public long getHostLeaseTime() {
+                Object value = properties.get(formatConfigKey(HostLeaseTime));
+                return value == null ? CachingSupplierConfig.super.getHostLeaseTime() : Long.parseLong(value.toString());
+            }
+
+            @Override
+            public int getHostResultSlotSize() {
+                Object value = properties.get(formatConfigKey(HostResultSlotSize));
+                return value == null ? CachingSupplierConfig.super.getHostResultSlotSize() : Integer.parseInt(value.toString());
+            }
+        }
     }
 }
-
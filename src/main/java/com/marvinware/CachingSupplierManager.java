@@ -1,12 +1,24 @@
 package com.marvinware;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-import static java.lang.Thread.sleep;
-
 /**
  * The type Caching supplier manager.
  *
@@ -16,6 +28,8 @@ public class CachingSupplierManager<T> {
 
     private final CachingSupplierConfig currentConfig;
     private final ConcurrentMap<String, CachingSupplier<T>> cachingSuppliersByResourceId = new ConcurrentHashMap<>();
+    private final CachingScheduler scheduler;
+    private final List<InvalidationListener> invalidationListeners = new CopyOnWriteArrayList<>();
     private final System.Logger logger = System.getLogger(CachingSupplierManager.class.getName());
 
 
@@ -36,45 +50,26 @@ public class CachingSupplierManager<T> {
     }
 
     /**
-     * Instantiates a new Caching supplier manager.
+     * Instantiates a new Caching supplier manager on the shared scheduler.
      *
      * @param config the config
      */
-    public CachingSupplierManager(CachingSupplierConfig config)
-    {
-        this.currentConfig = config;
-
-        if (currentConfig.isCacheCleanupThreadEnabled() &&
-                currentConfig.isCachingEnabled() &&
-                currentConfig.pollingPeriodForCleanupThread() <= 0) {
-            String errorMsg = "Cache cleanup thread configuration has an invalid polling period value: " + currentConfig.pollingPeriodForCleanupThread();
-            logger.log(System.Logger.Level.ERROR, errorMsg);
-            throw new RuntimeException(errorMsg);
-        }
-
-        if (config.isCacheCleanupThreadEnabled()) {
-            Thread t = getCleanerThread();
-            t.start();
-        }
+    public CachingSupplierManager(CachingSupplierConfig config) {
+        this(config, CachingScheduler.shared());
     }
 
-    private Thread getCleanerThread() {
-        Thread t = new Thread(() -> {
-            while (true) {
-                try {
-                    //noinspection BusyWait
-                    sleep(currentConfig.pollingPeriodForCleanupThread());
-                    for (CachingSupplier<T> cacheSupplier : cachingSuppliersByResourceId.values()) {
-                        if (cacheSupplier != null) {
-                            cacheSupplier.clearCacheIfStale();
-                        }
-                    }
-                } catch (Exception ignored) { }
-            }
-        });
-        t.setDaemon(true);
-        t.setName(this.getClass().getName() + ".CacheCleanup");
-        return t;
+    /**
+     * Instantiates a new Caching supplier manager.  Cached result expiry, background refreshes and stats sampling
+     * run on the scheduler, which is started if it is not already.  The manager does not close it.  Expiry of a
+     * supplier whose config has another ticker than the scheduler is timed on the scheduler's wheel for that ticker.
+     *
+     * @param config    the config
+     * @param scheduler the scheduler
+     */
+    public CachingSupplierManager(CachingSupplierConfig config, CachingScheduler scheduler)
+    {
+        this.currentConfig = config;
+        this.scheduler = scheduler.start();
     }
 
     /**
@@ -96,6 +91,7 @@ public class CachingSupplierManager<T> {
      */
     public void registerSupplier(String supplierId, CachingSupplierConfig cachingSupplierConfig, Supplier<T> supplier) {
         CachingSupplier<T> newSS = new CachingSupplier<>(supplierId, cachingSupplierConfig, supplier);
+        newSS.setScheduler(scheduler, null);
         CachingSupplier<T> oldSS = cachingSuppliersByResourceId.putIfAbsent(supplierId, newSS);
         if (oldSS != null) {
             String errorMsg = "A registered CachingSupplier already exists for id: " + supplierId;
@@ -104,6 +100,23 @@ public class CachingSupplierManager<T> {
         }
     }
 
+    /**
+     * Register supplier, sharing its results with the other processes on the host when the config has a host
+     * coordination directory: only one process at a time runs the supplier, and the others read its serialized
+     * result.  Without a directory this is the same as registering without a serializer.
+     *
+     * @param supplierId            the supplier id, the same in every process
+     * @param cachingSupplierConfig the supplier config
+     * @param supplier              the supplier
+     * @param serializer            the serializer of the results
+     */
+    public void registerSupplier(String supplierId, CachingSupplierConfig cachingSupplierConfig, Supplier<T> supplier,
+                                 SnapshotSerializer<T> serializer) {
+        String directory = cachingSupplierConfig.getHostCoordinationDirectory();
+        registerSupplier(supplierId, cachingSupplierConfig, directory == null ? supplier :
+                new HostSingleFlightSupplier<>(Path.of(directory), supplierId, cachingSupplierConfig, supplier, serializer));
+    }
+
     /**
      * Gets stats json.
      *
@@ -121,6 +134,179 @@ public class CachingSupplierManager<T> {
         }
     }
 
+    /**
+     * Sample the stats of every registered supplier periodically, on the scheduler.
+     *
+     * @param period   the period
+     * @param unit     the time unit of the period
+     * @param reset    reset the counters as they are read, so each sample covers one period
+     * @param consumer the consumer of each supplier's snapshot
+     * @return the scheduled future, cancel it to stop sampling
+     */
+    public ScheduledFuture<?> scheduleStatsSampling(long period, TimeUnit unit, boolean reset,
+                                                    Consumer<CachingSupplier.StatsSnapshot> consumer) {
+        return scheduler.scheduleAtFixedRate(() -> {
+            for (CachingSupplier<T> supplier : cachingSuppliersByResourceId.values()) {
+                consumer.accept(supplier.getStatsSnapshot(reset));
+            }
+        }, period, unit);
+    }
+
+    /**
+     * Warm up suppliers before the service takes traffic, so first requests do not pay the full supplier latency and
+     * a restart does not send a burst of first calls upstream.  At most parallelism suppliers run at once, and they
+     * are started no faster than the rate limit.  Suppliers that already have a fresh result, e.g. from a snapshot,
+     * are not run.  At the deadline no more are started, and the ones still running are left to finish in the
+     * background.  An id that is not registered, or whose supplier can not be started, is reported as failed.
+     *
+     * @param resourceIds      the resource ids, warmed in this order
+     * @param parallelism      the maximum number of suppliers running at once
+     * @param permitsPerSecond the maximum number of suppliers started per second, 0 for no limit
+     * @param timeout          the time until the deadline
+     * @param unit             the time unit of the timeout argument
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public WarmUpReport warmUp(Collection<String> resourceIds, int parallelism, double permitsPerSecond,
+                               long timeout, TimeUnit unit) throws InterruptedException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Warm up parallelism must be at least 1: " + parallelism);
+        }
+        List<String> ids = new ArrayList<>(resourceIds);
+
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + unit.toNanos(timeout);
+        long intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0L;
+        long nextStart = startNanos;
+        Semaphore running = new Semaphore(parallelism);
+        ConcurrentMap<String, WarmUpReport.Entry> results = new ConcurrentHashMap<>();
+        Set<String> started = new HashSet<>();
+
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            CachingSupplier<T> cachingSupplier = cachingSuppliersByResourceId.get(id);
+            if (cachingSupplier == null) {
+                results.put(id, new WarmUpReport.Entry(id, WarmUpReport.Outcome.failed, 0L,
+                        new RuntimeException("CachingSupplier resource id not registered: " + id)));
+                continue;
+            }
+            if (cachingSupplier.getState() == CachingSupplier.SupplierState.cached && !cachingSupplier.isCacheStale()) {
+                results.put(id, new WarmUpReport.Entry(id, WarmUpReport.Outcome.alreadyCached, 0L, null));
+                continue;
+            }
+            if (nextStart > deadline) {
+                break;
+            }
+            long wait;
+            while ((wait = nextStart - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(wait);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            if (!running.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            long supplierStart = System.nanoTime();
+            nextStart = Math.max(nextStart, supplierStart) + intervalNanos;
+            started.add(id);
+            CompletableFuture<T> future;
+            try {
+                // a stale result inside the stale-while-revalidate window would complete at once: wait for the run
+                future = cachingSupplier.warmAsync();
+            } catch (RuntimeException e) {
+                // thrown before anything was started: the permit would otherwise never come back
+                results.put(id, new WarmUpReport.Entry(id, WarmUpReport.Outcome.failed,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - supplierStart), e));
+                running.release();
+                continue;
+            }
+            future.whenComplete((r, e) -> {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - supplierStart);
+                results.putIfAbsent(id, new WarmUpReport.Entry(id,
+                        e == null ? WarmUpReport.Outcome.warmed : WarmUpReport.Outcome.failed, millis, e));
+                running.release();
+            });
+        }
+        if (running.tryAcquire(parallelism, Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            running.release(parallelism);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        List<WarmUpReport.Entry> entries = new ArrayList<>();
+        for (String id : ids) {
+            // a supplier that completes now loses to the timeout, so the report does not change after it is built
+            entries.add(results.computeIfAbsent(id, k -> started.contains(k) ?
+                    new WarmUpReport.Entry(k, WarmUpReport.Outcome.timedOut, elapsedMillis, null) :
+                    new WarmUpReport.Entry(k, WarmUpReport.Outcome.notStarted, 0L, null)));
+        }
+        WarmUpReport report = new WarmUpReport(entries, elapsedMillis);
+        logger.log(System.Logger.Level.INFO, "CachingSupplier warm up: " + report.toJson());
+        return report;
+    }
+
+    /**
+     * Write a warm-start snapshot: the last result of every registered supplier, with its completion time.
+     *
+     * @param path       the snapshot file, replaced atomically
+     * @param serializer the serializer of the results
+     * @return the number of results written
+     * @throws IOException if the file can not be written
+     */
+    public int writeSnapshot(Path path, SnapshotSerializer<T> serializer) throws IOException {
+        return CacheSnapshotFile.write(path, cachingSuppliersByResourceId, serializer);
+    }
+
+    /**
+     * Load a warm-start snapshot written by an earlier process.  Registered suppliers that have not run yet are
+     * seeded as cached, with their results' original age, so they are served from the cache and expire on their
+     * original schedule instead of all calling upstream at once.  Register the suppliers first.
+     *
+     * @param path       the snapshot file
+     * @param serializer the serializer of the results
+     * @return the number of suppliers seeded, 0 if there is no snapshot
+     * @throws IOException if the file can not be read or is not a snapshot
+     */
+    public int loadSnapshot(Path path, SnapshotSerializer<T> serializer) throws IOException {
+        int seeded = CacheSnapshotFile.read(path, cachingSuppliersByResourceId, serializer);
+        logger.log(System.Logger.Level.INFO, "Seeded " + seeded + " CachingSuppliers from snapshot: " + path);
+        return seeded;
+    }
+
+    /**
+     * Write a warm-start snapshot periodically, on the scheduler.  A failed write is logged and retried next period.
+     *
+     * @param path       the snapshot file
+     * @param serializer the serializer of the results
+     * @param period     the period
+     * @param unit       the time unit of the period
+     * @return the scheduled future, cancel it to stop writing
+     */
+    public ScheduledFuture<?> scheduleSnapshots(Path path, SnapshotSerializer<T> serializer, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(() -> writeSnapshotLogged(path, serializer), period, unit);
+    }
+
+    /**
+     * Write a warm-start snapshot when the JVM shuts down.
+     *
+     * @param path       the snapshot file
+     * @param serializer the serializer of the results
+     * @return the shutdown hook thread, which can be removed with Runtime.removeShutdownHook()
+     */
+    public Thread writeSnapshotOnShutdown(Path path, SnapshotSerializer<T> serializer) {
+        Thread hook = new Thread(() -> writeSnapshotLogged(path, serializer), "CachingSupplier-snapshot");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private void writeSnapshotLogged(Path path, SnapshotSerializer<T> serializer) {
+        try {
+            writeSnapshot(path, serializer);
+        } catch (IOException | RuntimeException e) {
+            logger.log(System.Logger.Level.ERROR, "Could not write CachingSupplier snapshot: " + path, e);
+        }
+    }
+
     public void resetStats(String resourceId) {
         CachingSupplier<T> supplier = cachingSuppliersByResourceId.get(resourceId);
         supplier.resetStats();
@@ -144,14 +330,103 @@ public class CachingSupplierManager<T> {
      * @return the t
      */
     public T get(String resourceId) {
+        return getCachingSupplier(resourceId).get();
+    }
+
+    /**
+     * Gets the result, waiting at most until the deadline.
+     *
+     * @param resourceId the resource id
+     * @param timeout    the maximum time to wait
+     * @param unit       the time unit of the timeout argument
+     * @return the result, or the previous cached result if the deadline passed and it is not too old
+     * @throws CachingSupplierTimeoutException if the deadline passed and there is no previous result young enough
+     */
+    public T get(String resourceId, long timeout, TimeUnit unit) {
+        return getCachingSupplier(resourceId).get(timeout, unit);
+    }
+
+    /**
+     * Gets the result without blocking.
+     *
+     * @param resourceId the resource id
+     * @return the future result
+     */
+    public CompletableFuture<T> getAsync(String resourceId) {
+        return getCachingSupplier(resourceId).getAsync();
+    }
+
+    boolean isRegistered(String resourceId) {
+        return cachingSuppliersByResourceId.containsKey(resourceId);
+    }
+
+    /**
+     * Invalidate the cached result, so the next get() calls the supplier.  Lets change events drive freshness, so
+     * TTLs can be long.  The invalidation listeners are notified.
+     *
+     * @param resourceId the resource id
+     */
+    public void invalidate(String resourceId) {
+        getCachingSupplier(resourceId).invalidate();
+        notifyInvalidationListeners(resourceId);
+    }
+
+    /**
+     * Invalidate the cached results of every registered supplier.  The invalidation listeners are notified of each.
+     */
+    public void invalidateAll() {
+        for (Map.Entry<String, CachingSupplier<T>> entry : cachingSuppliersByResourceId.entrySet()) {
+            entry.getValue().invalidate();
+            notifyInvalidationListeners(entry.getKey());
+        }
+    }
+
+    /**
+     * Reload the result in the background, while the cached result is still served.
+     *
+     * @param resourceId the resource id
+     * @return the future new result
+     */
+    public CompletableFuture<T> refresh(String resourceId) {
+        return getCachingSupplier(resourceId).refresh();
+    }
+
+    /**
+     * Add an invalidation listener.
+     *
+     * @param listener the listener
+     */
+    public void addInvalidationListener(InvalidationListener listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Remove an invalidation listener.
+     *
+     * @param listener the listener
+     */
+    public void removeInvalidationListener(InvalidationListener listener) {
+        invalidationListeners.remove(listener);
+    }
+
+    private void notifyInvalidationListeners(String resourceId) {
+        for (InvalidationListener listener : invalidationListeners) {
+            try {
+                listener.onInvalidate(resourceId);
+            } catch (RuntimeException e) {
+                logger.log(System.Logger.Level.ERROR, "Invalidation listener failed for CachingSupplier id: " + resourceId, e);
+            }
+        }
+    }
+
+    CachingSupplier<T> getCachingSupplier(String resourceId) {
         CachingSupplier<T> cachingSupplier = cachingSuppliersByResourceId.get(resourceId);
         if (cachingSupplier == null) {
             String errorMsg = "CachingSupplier resource id not registered: " + resourceId;
             logger.log(System.Logger.Level.ERROR, errorMsg);
             throw new RuntimeException(errorMsg);
         }
-        return cachingSupplier.get();
-
+        return cachingSupplier;
     }
 
     /**
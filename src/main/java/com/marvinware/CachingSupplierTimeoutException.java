@@ -0,0 +1,19 @@
+package com.marvinware;
+
+/**
+ * Thrown by a deadline-bounded get when the result is not available in time and there is no previous result to
+ * fall back to, or it is older than the cached results TTL plus the stale-if-error or stale-while-revalidate time.
+ */
+public class CachingSupplierTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new Caching supplier timeout exception.
+     *
+     * @param message the message
+     * @param cause   the cause
+     */
+    public CachingSupplierTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,237 @@
+package com.marvinware;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cluster-wide refresh leadership for the suppliers of one manager.  For each supplier id a RefreshCoordinator elects
+ * one node to call upstream; when the cache of any other node goes stale, it asks the leader for its result over a
+ * socket instead.  If the leader can not be reached in time, declines, or fails, the node fetches locally, so the
+ * cluster degrades to per-node fetches rather than errors.
+ * <p>
+ * The protocol is one request per connection.  Request: int magic, UTF supplier id.  Response: a status byte, then
+ * for OK the int length and bytes of the serialized result, at most 64 MiB.  Any bad response, or one that does not
+ * deserialize, is a peer failure and the node fetches locally.  The leader serves from its own CachingSupplier, so
+ * concurrent peer requests are single-flighted with its local ones.  A result from a peer is cached for the local TTL,
+ * so it can be up to twice the TTL old when it is last served.
+ *
+ * @param <T> the type of the results
+ */
+public class ClusterRefresh<T> implements AutoCloseable {
+    private static final System.Logger logger = System.getLogger(ClusterRefresh.class.getName());
+    private static final int MAGIC = 0x43535246;
+    private static final byte OK = 0;
+    private static final byte NOT_LEADER = 1;
+    private static final byte UNKNOWN_ID = 2;
+    private static final byte FAILED = 3;
+    static final int MAX_RESULT_SIZE = 64 << 20;
+
+    private final CachingSupplierManager<T> manager;
+    private final RefreshCoordinator coordinator;
+    private final SnapshotSerializer<T> serializer;
+    private final int peerTimeout;
+    private final ServerSocket serverSocket;
+    private final ExecutorService handlers;
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder peerResults = new LongAdder();
+    private final LongAdder peerFallbacks = new LongAdder();
+
+    /**
+     * Instantiates a new Cluster refresh, serving this node's results to peers on the bind address.
+     *
+     * @param manager     the manager the suppliers are registered with
+     * @param coordinator the coordinator
+     * @param serializer  the serializer of the results
+     * @param bindAddress the address to serve results on; port 0 picks a free port
+     * @param peerTimeout the milliseconds to wait for a leader before fetching locally
+     * @throws IOException if the address can not be bound
+     */
+    public ClusterRefresh(CachingSupplierManager<T> manager, RefreshCoordinator coordinator,
+                          SnapshotSerializer<T> serializer, InetSocketAddress bindAddress, int peerTimeout)
+            throws IOException {
+        this.manager = manager;
+        this.coordinator = coordinator;
+        this.serializer = serializer;
+        this.peerTimeout = peerTimeout;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(bindAddress);
+        this.handlers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ClusterRefresh-" + getAddress().getPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Thread acceptor = new Thread(this::accept, "ClusterRefresh-accept-" + getAddress().getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Register a supplier with the manager, refreshed by the elected node only.
+     *
+     * @param supplierId the supplier id, the same on every node
+     * @param config     the supplier config
+     * @param supplier   the supplier
+     */
+    public void registerSupplier(String supplierId, CachingSupplierConfig config, Supplier<T> supplier) {
+        manager.registerSupplier(supplierId, config, () -> get(supplierId, supplier));
+    }
+
+    private T get(String supplierId, Supplier<T> supplier) {
+        if (!coordinator.isLeader(supplierId)) {
+            InetSocketAddress leader = coordinator.getAddress(coordinator.getLeader(supplierId));
+            if (leader != null) {
+                try {
+                    T result = fetchFromPeer(leader, supplierId);
+                    peerResults.increment();
+                    return result;
+                } catch (IOException | RuntimeException e) {
+                    peerFallbacks.increment();
+                    logger.log(System.Logger.Level.DEBUG, "Fetching locally, no result from " + leader +
+                            " for CachingSupplier id: " + supplierId + ": " + e);
+                }
+            }
+        }
+        upstreamCalls.increment();
+        return supplier.get();
+    }
+
+    private T fetchFromPeer(InetSocketAddress leader, String supplierId) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(leader, peerTimeout);
+            socket.setSoTimeout(peerTimeout);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(MAGIC);
+            out.writeUTF(supplierId);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte status = in.readByte();
+            if (status != OK) {
+                throw new IOException("Peer status " + status);
+            }
+            int length = in.readInt();
+            // checked before allocating: a corrupt length must fall back like any other bad response
+            if (length < 0 || length > MAX_RESULT_SIZE) {
+                throw new IOException("Peer result length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return serializer.deserialize(bytes);
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                try {
+                    handlers.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    socket.close();
+                }
+            } catch (SocketException e) {
+                // closed
+            } catch (IOException e) {
+                logger.log(System.Logger.Level.WARNING, "ClusterRefresh accept failed", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(peerTimeout);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            String supplierId = in.readUTF();
+            byte[] bytes = null;
+            byte status;
+            // only the leader answers, so two nodes with different views can not forward to each other in a loop
+            if (!coordinator.isLeader(supplierId)) {
+                status = NOT_LEADER;
+            } else if (!manager.isRegistered(supplierId)) {
+                status = UNKNOWN_ID;
+            } else {
+                try {
+                    bytes = serializer.serialize(manager.get(supplierId));
+                    if (bytes.length > MAX_RESULT_SIZE) {
+                        throw new IOException("Result of " + bytes.length + " bytes is too large to share");
+                    }
+                    status = OK;
+                } catch (IOException | RuntimeException e) {
+                    logger.log(System.Logger.Level.DEBUG, "No result for peer, CachingSupplier id: " + supplierId, e);
+                    status = FAILED;
+                }
+            }
+            out.writeByte(status);
+            if (status == OK) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+        } catch (IOException e) {
+            logger.log(System.Logger.Level.DEBUG, "ClusterRefresh peer request failed: " + e);
+        }
+    }
+
+    /**
+     * Gets the address results are served on.
+     *
+     * @return the address
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Gets upstream calls.
+     *
+     * @return the number of times this node ran a supplier
+     */
+    public long getUpstreamCalls() {
+        return upstreamCalls.sum();
+    }
+
+    /**
+     * Gets peer results.
+     *
+     * @return the number of results this node got from a leader
+     */
+    public long getPeerResults() {
+        return peerResults.sum();
+    }
+
+    /**
+     * Gets peer fallbacks.
+     *
+     * @return the number of times a leader did not answer and this node fetched locally
+     */
+    public long getPeerFallbacks() {
+        return peerFallbacks.sum();
+    }
+
+    /**
+     * Stop serving results to peers.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        handlers.shutdown();
+    }
+}
@@ -0,0 +1,46 @@
+package com.marvinware;
+
+/**
+ * Limit on the number of supplier runs a CachingSupplier allows at once.  Each CachingSupplier gets its own instance
+ * from {@link CachingSupplierConfig#newConcurrencyLimit()} and reports every finished supplier run to it, so an
+ * adaptive limit can follow the upstream's latency.
+ * <p>
+ * getLimit() is read on every get() and must not block.
+ */
+public interface ConcurrencyLimit {
+
+    /**
+     * Gets the current limit.
+     *
+     * @return the number of supplier runs allowed at once, or less than 1 for no limit
+     */
+    int getLimit();
+
+    /**
+     * Record a finished supplier run.
+     *
+     * @param supplierNanos the supplier time in nanoseconds
+     * @param inFlight      the number of supplier runs in flight when this one started, including it
+     * @param failed        the supplier threw
+     */
+    void onSample(long supplierNanos, int inFlight, boolean failed);
+
+    /**
+     * Fixed limit read from the config's max concurrent running suppliers, so it follows config changes.
+     *
+     * @param config the config
+     * @return the concurrency limit
+     */
+    static ConcurrencyLimit fixed(CachingSupplierConfig config) {
+        return new ConcurrencyLimit() {
+            @Override
+            public int getLimit() {
+                return config.getMaxConcurrentRunningSuppliers();
+            }
+
+            @Override
+            public void onSample(long supplierNanos, int inFlight, boolean failed) {
+            }
+        };
+    }
+}
@@ -0,0 +1,234 @@
+package com.marvinware;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight across the processes on one host: a Supplier decorator that coordinates through a memory-mapped lease
+ * file, so only one process runs the supplier and the others read the result it publishes.
+ * <p>
+ * Each supplier id has its own file, best placed on a memory backed file system like /dev/shm.  The file holds a
+ * lease, taken with a compare-and-set on the mapped memory and held until the run ends or the lease time passes, and
+ * a result slot with the serialized result of the last run.  A process that finds the lease held waits for the
+ * holder to publish; one that finds a result younger than the cached results TTL uses it without calling upstream.
+ * The slot is guarded by a sequence number that is odd while it is written, so readers never see a torn result.
+ * Times in the file are wall clock milliseconds, as they are compared between processes.
+ * <p>
+ * A failed run is not shared: the lease is released and the next waiter runs the supplier itself.  A shared result
+ * is cached by each process for its own TTL, so it can be up to twice the TTL old when it is last served.  After an
+ * invalidate() or refresh() of its CachingSupplier, a process ignores the results published until then, so the
+ * forced run reaches upstream instead of reading back the result that was just invalidated.
+ *
+ * @param <T> the type of the results
+ */
+public class HostSingleFlightSupplier<T> implements Supplier<T> {
+    private static final System.Logger logger = System.getLogger(HostSingleFlightSupplier.class.getName());
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int SEQUENCE = 0;
+    private static final int LEASE_EXPIRES = 8;
+    private static final int LEASE_OWNER = 16;
+    private static final int COMPLETED_AT = 24;
+    private static final int LENGTH = 32;
+    private static final int SLOT = 64;
+    private static final int MAX_READ_SPINS = 10000;
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private final String supplierId;
+    private final Supplier<T> supplier;
+    private final SnapshotSerializer<T> serializer;
+    private final CachingSupplierConfig config;
+    private final int slotSize;
+    private final MappedByteBuffer lease;
+    private final long pid = ProcessHandle.current().pid();
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder sharedResults = new LongAdder();
+    private volatile long skipResultsUpTo = 0L;
+
+    /**
+     * Instantiates a new Host single flight supplier, with the lease time and result slot size from the config, and
+     * results shared for the cached results TTL.  The lease time and TTL follow config reloads; the slot size is
+     * fixed when the lease file is mapped.
+     *
+     * @param directory  the directory of the lease files, created if needed
+     * @param supplierId the supplier id, the same in every process
+     * @param config     the config
+     * @param supplier   the supplier
+     * @param serializer the serializer of the results
+     */
+    public HostSingleFlightSupplier(Path directory, String supplierId, CachingSupplierConfig config,
+                                    Supplier<T> supplier, SnapshotSerializer<T> serializer) {
+        this.supplierId = supplierId;
+        this.supplier = supplier;
+        this.serializer = serializer;
+        this.config = config;
+        this.slotSize = config.getHostResultSlotSize();
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(fileName(supplierId));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // every process maps the same size, and mapping past the end grows the file with zeros
+                this.lease = channel.map(FileChannel.MapMode.READ_WRITE, 0L, SLOT + (long) slotSize);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not map lease file for CachingSupplier id: " + supplierId, e);
+        }
+    }
+
+    @Override
+    public T get() {
+        long freshFor = config.getCachedResultsTTL();
+        long leaseTime = config.getHostLeaseTime();
+        long waitNanos = TimeUnit.MICROSECONDS.toNanos(100L);
+        while (true) {
+            long now = System.currentTimeMillis();
+            long completedAt = (long) LONGS.getVolatile(lease, COMPLETED_AT);
+            if (completedAt > skipResultsUpTo && now - completedAt <= freshFor) {
+                T result = readResult();
+                if (result != null) {
+                    sharedResults.increment();
+                    return result;
+                }
+            }
+            long expires = (long) LONGS.getVolatile(lease, LEASE_EXPIRES);
+            if (expires < now && LONGS.compareAndSet(lease, LEASE_EXPIRES, expires, now + leaseTime)) {
+                return runAndPublish(now + leaseTime);
+            }
+            LockSupport.parkNanos(waitNanos);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for the host lease of CachingSupplier id: " + supplierId);
+            }
+            waitNanos = Math.min(waitNanos * 2L, MAX_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Skip the results published so far, including ones from the current millisecond: the next get() takes the
+     * lease and runs the supplier, or waits for a result published after this.
+     */
+    void skipPublishedResults() {
+        skipResultsUpTo = System.currentTimeMillis();
+    }
+
+    private T runAndPublish(long expires) {
+        LONGS.setVolatile(lease, LEASE_OWNER, pid);
+        try {
+            upstreamCalls.increment();
+            T result = supplier.get();
+            publish(result);
+            return result;
+        } finally {
+            // only release our own lease: after it expired, another process may have taken it over
+            LONGS.compareAndSet(lease, LEASE_EXPIRES, expires, 0L);
+        }
+    }
+
+    private void publish(T result) {
+        byte[] bytes;
+        try {
+            bytes = serializer.serialize(result);
+        } catch (IOException | RuntimeException e) {
+            logger.log(System.Logger.Level.WARNING, "Result not shared for CachingSupplier id: " + supplierId, e);
+            return;
+        }
+        if (bytes.length > slotSize) {
+            logger.log(System.Logger.Level.WARNING, "Result of " + bytes.length + " bytes is larger than the host " +
+                    "result slot, not shared for CachingSupplier id: " + supplierId);
+            return;
+        }
+        // The sequence is odd while the slot is written.  Left odd, it is a holder that died or lost its lease part
+        // way through; we hold the lease now, so we take the write over, and its late end then fails its CAS.
+        long sequence = (long) LONGS.getVolatile(lease, SEQUENCE);
+        long writing = (sequence | 1L) + ((sequence & 1L) << 1);
+        if (!LONGS.compareAndSet(lease, SEQUENCE, sequence, writing)) {
+            return;
+        }
+        // the plain writes of the slot must not become visible before the odd sequence does
+        VarHandle.storeStoreFence();
+        lease.put(SLOT, bytes);
+        LONGS.setVolatile(lease, LENGTH, (long) bytes.length);
+        LONGS.setVolatile(lease, COMPLETED_AT, System.currentTimeMillis());
+        LONGS.compareAndSet(lease, SEQUENCE, writing, writing + 1L);
+    }
+
+    // Seqlock read: retried until the sequence is even and unchanged around the copy.  A write that does not end
+    // soon is treated as no result, so a holder that died mid-write can not stall readers.
+    private T readResult() {
+        byte[] bytes;
+        int spins = 0;
+        while (true) {
+            long before = (long) LONGS.getVolatile(lease, SEQUENCE);
+            if ((before & 1L) != 0L) {
+                if (++spins > MAX_READ_SPINS) {
+                    return null;
+                }
+                Thread.onSpinWait();
+                continue;
+            }
+            long length = (long) LONGS.getVolatile(lease, LENGTH);
+            if (length <= 0L || length > slotSize) {
+                return null;
+            }
+            bytes = new byte[(int) length];
+            lease.get(SLOT, bytes);
+            // an acquire read does not order the plain reads of the copy before it, the fence does
+            VarHandle.acquireFence();
+            if ((long) LONGS.getVolatile(lease, SEQUENCE) == before) {
+                break;
+            }
+        }
+        try {
+            return serializer.deserialize(bytes);
+        } catch (IOException | RuntimeException e) {
+            logger.log(System.Logger.Level.WARNING, "Shared result not readable for CachingSupplier id: " + supplierId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets upstream calls.
+     *
+     * @return the number of times this process ran the supplier
+     */
+    public long getUpstreamCalls() {
+        return upstreamCalls.sum();
+    }
+
+    /**
+     * Gets shared results.
+     *
+     * @return the number of times this process used a result published by a process on the host
+     */
+    public long getSharedResults() {
+        return sharedResults.sum();
+    }
+
+    /**
+     * Gets the pid of the process holding the lease.
+     *
+     * @return the pid, or 0 if the lease is free
+     */
+    public long getLeaseOwner() {
+        return (long) LONGS.getVolatile(lease, LEASE_EXPIRES) < System.currentTimeMillis() ? 0L :
+                (long) LONGS.getVolatile(lease, LEASE_OWNER);
+    }
+
+    // The id is kept readable, with a hash so that ids differing only in replaced characters do not share a file
+    static String fileName(String supplierId) {
+        return supplierId.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + Integer.toHexString(supplierId.hashCode()) +
+                ".lease";
+    }
+}
@@ -0,0 +1,16 @@
+package com.marvinware;
+
+/**
+ * Notified when a manager invalidates a cached result, e.g. to pass the invalidation on to other caches or nodes.  A
+ * manager's own invalidate method fits, so managers can be chained: {@code upstream.addInvalidationListener(downstream::invalidate)}.
+ */
+@FunctionalInterface
+public interface InvalidationListener {
+
+    /**
+     * On invalidate.
+     *
+     * @param resourceId the resource id whose result was invalidated
+     */
+    void onInvalidate(String resourceId);
+}
@@ -0,0 +1,114 @@
+package com.marvinware;
+
+import com.marvinware.utils.RendezvousRefreshCoordinator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Stand-in for a cluster, in one process: several nodes, each with its own manager and ClusterRefresh serving on a
+ * loopback port, and rendezvous leader election over a shared membership.  For testing cluster refresh, and trying
+ * configs, on one machine.
+ *
+ * @param <T> the type of the results
+ */
+public class LoopbackCluster<T> implements AutoCloseable {
+    private final Map<String, InetSocketAddress> members = new ConcurrentHashMap<>();
+    private final List<CachingSupplierManager<T>> managers = new ArrayList<>();
+    private final List<ClusterRefresh<T>> nodes = new ArrayList<>();
+    private final CachingSupplierConfig config;
+
+    /**
+     * Instantiates a new Loopback cluster.
+     *
+     * @param nodeCount   the number of nodes
+     * @param config      the config of every node's manager and suppliers
+     * @param serializer  the serializer of the results
+     * @param peerTimeout the milliseconds a node waits for a leader before fetching locally
+     * @throws IOException if a loopback port can not be bound
+     */
+    public LoopbackCluster(int nodeCount, CachingSupplierConfig config, SnapshotSerializer<T> serializer,
+                           int peerTimeout) throws IOException {
+        this.config = config;
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                String nodeId = "node" + i;
+                CachingSupplierManager<T> manager = new CachingSupplierManager<>(config);
+                ClusterRefresh<T> node = new ClusterRefresh<>(manager,
+                        new RendezvousRefreshCoordinator(nodeId, members), serializer,
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), peerTimeout);
+                managers.add(manager);
+                nodes.add(node);
+                members.put(nodeId, node.getAddress());
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Register a supplier on every node.
+     *
+     * @param supplierId the supplier id
+     * @param supplier   the supplier, shared by the nodes
+     */
+    public void registerSupplier(String supplierId, Supplier<T> supplier) {
+        for (ClusterRefresh<T> node : nodes) {
+            node.registerSupplier(supplierId, config, supplier);
+        }
+    }
+
+    /**
+     * Gets the manager of a node.
+     *
+     * @param index the node index
+     * @return the manager
+     */
+    public CachingSupplierManager<T> getManager(int index) {
+        return managers.get(index);
+    }
+
+    /**
+     * Gets a node.
+     *
+     * @param index the node index
+     * @return the node
+     */
+    public ClusterRefresh<T> getNode(int index) {
+        return nodes.get(index);
+    }
+
+    /**
+     * Gets the index of the node elected to refresh a supplier.
+     *
+     * @param supplierId the supplier id
+     * @return the node index
+     */
+    public int getLeaderIndex(String supplierId) {
+        String leader = new RendezvousRefreshCoordinator("node0", members).getLeader(supplierId);
+        return Integer.parseInt(leader.substring("node".length()));
+    }
+
+    /**
+     * Stop a node serving its peers, as if it went down.  Its peers fall back to fetching locally.
+     *
+     * @param index the node index
+     */
+    public void stopNode(int index) {
+        nodes.get(index).close();
+    }
+
+    @Override
+    public void close() {
+        for (ClusterRefresh<T> node : nodes) {
+            node.close();
+        }
+    }
+}
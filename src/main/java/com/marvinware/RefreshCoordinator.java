@@ -0,0 +1,46 @@
+package com.marvinware;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Elects, per supplier id, the one node of a cluster that refreshes the supplier from upstream.  The other nodes get
+ * the result from that node, so upstream load is one call per TTL for the cluster instead of one per node.
+ * <p>
+ * Every node must elect the same leader for the same membership.  While views differ, e.g. during a membership change,
+ * a node that is asked for a result it is not the leader of declines, and the asking node fetches locally.
+ */
+public interface RefreshCoordinator {
+
+    /**
+     * Gets local node id.
+     *
+     * @return the id of this node
+     */
+    String getLocalNodeId();
+
+    /**
+     * Gets the leader of a supplier.
+     *
+     * @param supplierId the supplier id
+     * @return the id of the node elected to refresh the supplier
+     */
+    String getLeader(String supplierId);
+
+    /**
+     * Gets the address a node serves results on.
+     *
+     * @param nodeId the node id
+     * @return the address, or null if the node is not a member
+     */
+    InetSocketAddress getAddress(String nodeId);
+
+    /**
+     * Is leader boolean.
+     *
+     * @param supplierId the supplier id
+     * @return true if this node refreshes the supplier
+     */
+    default boolean isLeader(String supplierId) {
+        return getLocalNodeId().equals(getLeader(supplierId));
+    }
+}
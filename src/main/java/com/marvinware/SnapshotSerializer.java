@@ -0,0 +1,63 @@
+package com.marvinware;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Turns cached results into bytes and back, for warm-start snapshots.
+ *
+ * @param <T> the type of the cached results
+ */
+public interface SnapshotSerializer<T> {
+
+    /**
+     * Serialize a result.
+     *
+     * @param value the result
+     * @return the bytes
+     * @throws IOException if the result can not be serialized
+     */
+    byte[] serialize(T value) throws IOException;
+
+    /**
+     * Deserialize a result.
+     *
+     * @param bytes the bytes
+     * @return the result
+     * @throws IOException if the bytes can not be read
+     */
+    T deserialize(byte[] bytes) throws IOException;
+
+    /**
+     * Serializer using Java serialization.  The results must be Serializable.  Only read snapshots this process or a
+     * trusted one wrote: Java deserialization of untrusted bytes is unsafe.
+     *
+     * @param <T> the type of the cached results
+     * @return the serializer
+     */
+    static <T> SnapshotSerializer<T> javaSerialization() {
+        return new SnapshotSerializer<>() {
+            @Override
+            public byte[] serialize(T value) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                }
+                return bytes.toByteArray();
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T deserialize(byte[] bytes) throws IOException {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return (T) in.readObject();
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    throw new IOException("Can not deserialize snapshot value", e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package com.marvinware;
+
+import com.marvinware.utils.CoarseTicker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monotonic time source for all staleness, stagger and result age decisions.  Unlike the wall clock it does not jump
+ * under NTP adjustments, and it can be replaced to drive time deterministically in tests and simulations.
+ * <p>
+ * Readings are nanoseconds from an arbitrary origin and must always be positive: 0 is used as "not set".
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * Read the ticker.
+     *
+     * @return the current time in nanoseconds, always positive
+     */
+    long read();
+
+    /**
+     * System ticker: System.nanoTime(), shifted so that readings are positive.
+     *
+     * @return the ticker
+     */
+    static Ticker systemTicker() {
+        return SystemTicker.INSTANCE;
+    }
+
+    /**
+     * Coarse ticker: a cached reading refreshed by a single shared background thread, so a read is a single volatile
+     * load.  Its resolution is about a millisecond, which is enough for TTLs and stagger delays on very hot suppliers.
+     *
+     * @return the ticker
+     */
+    static Ticker coarseTicker() {
+        return CoarseTicker.INSTANCE;
+    }
+
+    /**
+     * Default System.nanoTime() based ticker.  Readings start a year above 0, so results restored from a snapshot
+     * taken by an earlier process can be back-dated to their original age.
+     */
+    final class SystemTicker implements Ticker {
+        static final SystemTicker INSTANCE = new SystemTicker();
+        private static final long ORIGIN = System.nanoTime() - TimeUnit.DAYS.toNanos(365L);
+
+        private SystemTicker() { }
+
+        @Override
+        public long read() {
+            return System.nanoTime() - ORIGIN;
+        }
+    }
+}
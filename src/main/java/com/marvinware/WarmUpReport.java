@@ -0,0 +1,177 @@
+package com.marvinware;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of CachingSupplierManager.warmUp(): which suppliers warmed, and how long each took.
+ */
+public final class WarmUpReport {
+    private final List<Entry> entries;
+    private final long elapsedMillis;
+
+    WarmUpReport(List<Entry> entries, long elapsedMillis) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Gets entries, in the order the ids were given.
+     *
+     * @return the entries
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the entry of a supplier.
+     *
+     * @param resourceId the resource id
+     * @return the entry, or null if the id was not warmed up
+     */
+    public Entry getEntry(String resourceId) {
+        for (Entry entry : entries) {
+            if (entry.resourceId.equals(resourceId)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count the entries with an outcome.
+     *
+     * @param outcome the outcome
+     * @return the count
+     */
+    public int count(Outcome outcome) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.outcome == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Is complete boolean.
+     *
+     * @return true if every supplier warmed or was already cached
+     */
+    public boolean isComplete() {
+        return count(Outcome.warmed) + count(Outcome.alreadyCached) == entries.size();
+    }
+
+    /**
+     * Gets elapsed millis.
+     *
+     * @return the milliseconds the warm up took
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * To json string.
+     *
+     * @return the json string
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"elapsedMillis\":").append(elapsedMillis)
+                .append(",\"complete\":").append(isComplete()).append(",\"suppliers\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"").append(entry.resourceId)
+                    .append("\",\"outcome\":\"").append(entry.outcome).append("\",\"millis\":").append(entry.millis)
+                    .append("}");
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    /**
+     * How the warm up of one supplier ended.
+     */
+    public enum Outcome {
+        /**
+         * The supplier ran and its result is cached.
+         */
+        warmed,
+        /**
+         * The supplier already had a fresh result, e.g. from a snapshot, so it was not run.
+         */
+        alreadyCached,
+        /**
+         * The supplier threw.
+         */
+        failed,
+        /**
+         * The supplier was still running at the deadline.  It is not cancelled, so its result is cached when it ends.
+         */
+        timedOut,
+        /**
+         * The deadline passed before the supplier was started.
+         */
+        notStarted
+    }
+
+    /**
+     * Warm up of one supplier.
+     */
+    public static final class Entry {
+        private final String resourceId;
+        private final Outcome outcome;
+        private final long millis;
+        private final Throwable error;
+
+        Entry(String resourceId, Outcome outcome, long millis, Throwable error) {
+            this.resourceId = resourceId;
+            this.outcome = outcome;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        /**
+         * Gets resource id.
+         *
+         * @return the resource id
+         */
+        public String getResourceId() {
+            return resourceId;
+        }
+
+        /**
+         * Gets outcome.
+         *
+         * @return the outcome
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Gets millis.
+         *
+         * @return the milliseconds from start to the outcome, 0 if the supplier was not started
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Gets error.
+         *
+         * @return the error the supplier threw, or null
+         */
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.marvinware;
+
+import com.marvinware.utils.FrequencySketch;
+import com.marvinware.utils.LossyReadBuffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU size bound for a CachingFunction.
+ * <p>
+ * New keys enter a small LRU window (1% of the maximum).  Keys leaving the window are candidates for the main space,
+ * a segmented LRU of probation (20%) and protected (80%) segments.  When the cache is over its maximum, the
+ * candidate is admitted only if the frequency sketch has seen it more often than the probation segment's LRU victim,
+ * so a scan over a long tail of one-off keys cannot flush the hot set.
+ * <p>
+ * Readers never wait on the policy: reads go to a lossy striped buffer and writes to a bounded queue, and whichever
+ * caller wins a tryLock drains them and evicts.  A writer that finds the queue full waits for the lock and drains it
+ * itself, and a drain evicts as soon as an add takes the cache over its maximum rather than after the queue is empty,
+ * so adds can not run ahead of eviction and the cache stays within the maximum plus the queue's capacity, even while
+ * writers keep refilling the queue during a drain.  Removals by expiry come from the timer thread, which must not
+ * wait, so they go to an unbounded queue that the next drain picks up; there is at most one per key, and they only
+ * shrink the cache.  The
+ * deques and the sketch are only touched while draining.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class WindowTinyLfuPolicy<K, V> {
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+    static final int WRITE_BUFFER_SIZE =
+            128 * Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private final ConcurrentMap<K, Node<K, V>> map;
+    private final CachingSupplier.Stats stats;
+    private final long maximumSize;
+    private final long maximumWindowSize;
+    private final long maximumProtectedSize;
+    private final FrequencySketch<K> sketch;
+    private final LossyReadBuffer<Node<K, V>> readBuffer = new LossyReadBuffer<>();
+    private final ArrayBlockingQueue<Runnable> writeBuffer = new ArrayBlockingQueue<>(WRITE_BUFFER_SIZE);
+    private final ConcurrentLinkedQueue<Node<K, V>> expiryBuffer = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private final Deque<K, V> window = new Deque<>();
+    private final Deque<K, V> probation = new Deque<>();
+    private final Deque<K, V> protectedDeque = new Deque<>();
+    private long windowSize;
+    private long mainSize;
+    private long protectedSize;
+
+    WindowTinyLfuPolicy(ConcurrentMap<K, Node<K, V>> map, CachingSupplier.Stats stats, long maximumSize) {
+        this.map = map;
+        this.stats = stats;
+        this.maximumSize = maximumSize;
+        this.maximumWindowSize = Math.max(1L, maximumSize / 100L);
+        this.maximumProtectedSize = (long) ((maximumSize - maximumWindowSize) * 0.8);
+        this.sketch = new FrequencySketch<>(maximumSize);
+    }
+
+    /**
+     * Record a hit on a key that is in the map.
+     */
+    void recordRead(Node<K, V> node) {
+        if (readBuffer.offer(node)) {
+            tryDrain();
+        }
+    }
+
+    /**
+     * Record a key added to the map.
+     */
+    void recordWrite(Node<K, V> node) {
+        afterWrite(() -> onAdd(node));
+    }
+
+    /**
+     * Record a key removed from the map other than by eviction.
+     */
+    void recordRemoval(Node<K, V> node) {
+        afterWrite(() -> unlink(node));
+    }
+
+    /**
+     * Record a key removed from the map by expiry.  Neither waits nor drains: the removal is left to whichever drain
+     * runs next, as one in progress may not end while writers keep it busy.
+     */
+    void recordExpiry(Node<K, V> node) {
+        expiryBuffer.add(node);
+    }
+
+    /**
+     * Drain the buffers and evict, waiting for another drain in progress to finish.
+     */
+    void drain() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of keys the policy is tracking.
+     */
+    long size() {
+        evictionLock.lock();
+        try {
+            return windowSize + mainSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterWrite(Runnable task) {
+        while (!writeBuffer.offer(task)) {
+            drain();
+        }
+        tryDrain();
+    }
+
+    private void tryDrain() {
+        if (evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void maintenance() {
+        readBuffer.drainTo(this::onRead);
+        Node<K, V> expired;
+        while ((expired = expiryBuffer.poll()) != null) {
+            unlink(expired);
+        }
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null) {
+            task.run();
+            if (windowSize + mainSize > maximumSize) {
+                evict();
+            }
+        }
+        evict();
+    }
+
+    private void onRead(Node<K, V> node) {
+        if (node.queue == 0) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedSize++;
+            while (protectedSize > maximumProtectedSize) {
+                Node<K, V> demoted = protectedDeque.pollFirst();
+                protectedSize--;
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedDeque.moveToBack(node);
+        }
+    }
+
+    private void onAdd(Node<K, V> node) {
+        if (node.queue != 0 || node.removed) {
+            return;
+        }
+        sketch.increment(node.key);
+        node.queue = WINDOW;
+        window.addLast(node);
+        windowSize++;
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.removed = true;
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowSize--;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                mainSize--;
+                break;
+            case PROTECTED:
+                protectedDeque.remove(node);
+                protectedSize--;
+                mainSize--;
+                break;
+            default:
+                break;
+        }
+        node.queue = 0;
+    }
+
+    private void evict() {
+        // keys leaving the window become candidates at the back of probation
+        while (windowSize > maximumWindowSize) {
+            Node<K, V> candidate = window.pollFirst();
+            windowSize--;
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            mainSize++;
+        }
+        while (windowSize + mainSize > maximumSize) {
+            Node<K, V> victim = probation.peekFirst();
+            Node<K, V> candidate = probation.peekLast();
+            Node<K, V> evicted;
+            if (victim == null) {
+                evicted = protectedDeque.peekFirst() != null ? protectedDeque.peekFirst() : window.peekFirst();
+            } else if (victim == candidate) {
+                evicted = victim;
+            } else {
+                evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+            }
+            if (evicted == null) {
+                return;
+            }
+            unlink(evicted);
+            if (map.remove(evicted.key, evicted)) {
+                stats.incrementEviction();
+            }
+        }
+    }
+
+    /**
+     * Map entry of a CachingFunction: the key's CachingSupplier plus its place in the policy.
+     */
+    static final class Node<K, V> {
+        final K key;
+        final CachingSupplier<V> cachingSupplier;
+        // guarded by evictionLock
+        private int queue;
+        private boolean removed;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        Node(K key, CachingSupplier<V> cachingSupplier) {
+            this.key = key;
+            this.cachingSupplier = cachingSupplier;
+        }
+    }
+
+    // Intrusive doubly linked list, LRU at the front
+    private static final class Deque<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekLast() {
+            return last;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
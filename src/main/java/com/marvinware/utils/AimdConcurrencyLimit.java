@@ -0,0 +1,53 @@
+package com.marvinware.utils;
+
+import com.marvinware.ConcurrencyLimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Additive increase, multiplicative decrease concurrency limit.
+ * <p>
+ * A supplier run that fails, or takes longer than the latency threshold, cuts the limit by the backoff ratio.  A run
+ * that succeeds while the limit is at least half used raises it by one.  The limit never leaves [min, max].
+ */
+public class AimdConcurrencyLimit implements ConcurrencyLimit {
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final AtomicInteger limit;
+
+    /**
+     * Instantiates a new Aimd concurrency limit.
+     *
+     * @param initialLimit       the initial limit
+     * @param minLimit           the min limit
+     * @param maxLimit           the max limit
+     * @param latencyThresholdMs supplier runs slower than this count as overload
+     */
+    public AimdConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit bounds: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+    }
+
+    @Override
+    public int getLimit() {
+        return limit.get();
+    }
+
+    @Override
+    public void onSample(long supplierNanos, int inFlight, boolean failed) {
+        if (failed || supplierNanos > latencyThresholdNanos) {
+            limit.updateAndGet(l -> Math.max(minLimit, (int) (l * BACKOFF_RATIO)));
+        } else {
+            limit.updateAndGet(l -> inFlight * 2 >= l ? Math.min(maxLimit, l + 1) : l);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.marvinware.utils;
+
+import com.marvinware.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ticker whose reading is cached in a volatile field and refreshed about once a millisecond by one daemon thread.
+ * The thread starts with the first use of {@link #INSTANCE}.
+ */
+public final class CoarseTicker implements Ticker {
+    public static final CoarseTicker INSTANCE = new CoarseTicker(TimeUnit.MILLISECONDS.toNanos(1L));
+
+    private final Ticker source = Ticker.systemTicker();
+    private final long resolutionNanos;
+    private volatile long now;
+
+    private CoarseTicker(long resolutionNanos) {
+        this.resolutionNanos = resolutionNanos;
+        this.now = source.read();
+        Thread updater = new Thread(this::update);
+        updater.setDaemon(true);
+        updater.setName(CoarseTicker.class.getName() + ".Updater");
+        updater.start();
+    }
+
+    @Override
+    public long read() {
+        return now;
+    }
+
+    /**
+     * Gets resolution nanos.
+     *
+     * @return the resolution in nanoseconds
+     */
+    public long getResolutionNanos() {
+        return resolutionNanos;
+    }
+
+    private void update() {
+        while (true) {
+            LockSupport.parkNanos(resolutionNanos);
+            now = source.read();
+        }
+    }
+}
@@ -1,16 +1,20 @@
 package com.marvinware.utils;
 
+import com.marvinware.Ticker;
+
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
- * The type Completable future with ts.
+ * The type Completable future with ts.  Timestamps are readings of a {@link Ticker}, in nanoseconds; ages and fetch
+ * times are reported in milliseconds.
  *
  * @param <T> the type parameter
  */
 public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
+    private final Ticker ticker;
     private volatile long startTS = 0L;
     private volatile long completeTS = 0L;
     private CompletableFuture<T> chainedFuture;
@@ -22,7 +26,19 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
      */
     @SuppressWarnings("CopyConstructorMissesField")
     public CompletableChainableFutureWithTS(CompletableChainableFutureWithTS<T> chainedFuture) {
+        this(chainedFuture, Ticker.systemTicker());
+    }
+
+    /**
+     * Instantiates a new Completable future with ts.
+     *
+     * @param chainedFuture the chained future
+     * @param ticker        the ticker the timestamps are read from
+     */
+    @SuppressWarnings("CopyConstructorMissesField")
+    public CompletableChainableFutureWithTS(CompletableChainableFutureWithTS<T> chainedFuture, Ticker ticker) {
         this.chainedFuture = chainedFuture;
+        this.ticker = ticker;
     }
 
     /**
@@ -52,8 +68,14 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
         return completeTS;
     }
 
+    /**
+     * Gets result age.
+     *
+     * @return the milliseconds since the future completed, or 0 if it has not
+     */
     public long getResultAge() {
-        return getCompleteTS() > 0L ? System.currentTimeMillis() - getCompleteTS() : 0L;
+        long completeTS = getCompleteTS();
+        return completeTS > 0L ? TimeUnit.NANOSECONDS.toMillis(ticker.read() - completeTS) : 0L;
     }
 
     /**
@@ -68,10 +90,10 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
     /**
      * Supplier fetch time long.
      *
-     * @return the long
+     * @return the milliseconds from start to completion, or -1 if the future has not completed
      */
     public long supplierFetchTime() {
-        return completeTS <= 0L ? -1L : completeTS - startTS;
+        return completeTS <= 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(completeTS - startTS);
     }
 
     @Override
@@ -79,33 +101,39 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
         try {
             T ret = super.get();
             if (getCompleteTS() <= 0L) {
-                setCompleteTS(System.currentTimeMillis());
+                setCompleteTS(ticker.read());
             }
             return ret;
         } catch (InterruptedException | ExecutionException e) {
-            setCompleteTS(System.currentTimeMillis());
+            if (getCompleteTS() <= 0L) {
+                setCompleteTS(ticker.read());
+            }
             throw e;
         }
     }
 
     /**
+     * A timeout or interrupt does not complete the future, so it does not set the complete ts.
+     *
      * @param timeout the maximum time to wait
      * @param unit    the time unit of the timeout argument
-     * @return
-     * @throws InterruptedException
-     * @throws ExecutionException
-     * @throws TimeoutException
+     * @return the result
+     * @throws InterruptedException the interrupted exception
+     * @throws ExecutionException   the execution exception
+     * @throws TimeoutException     the timeout exception
      */
     @Override
     public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
         try {
             T ret = super.get(timeout, unit);
             if (getCompleteTS() <= 0L) {
-                setCompleteTS(System.currentTimeMillis());
+                setCompleteTS(ticker.read());
             }
             return ret;
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            setCompleteTS(System.currentTimeMillis());
+        } catch (ExecutionException e) {
+            if (getCompleteTS() <= 0L) {
+                setCompleteTS(ticker.read());
+            }
             throw e;
         }
     }
@@ -113,7 +141,7 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
     @Override
     public boolean complete(T value) {
         boolean ret = super.complete(value);
-        setCompleteTS(System.currentTimeMillis());
+        setCompleteTS(ticker.read());
         if (chainedFuture != null) {
             chainedFuture.complete(value);
             chainedFuture = null;
@@ -121,10 +149,21 @@ public class CompletableChainableFutureWithTS<T> extends CompletableFuture<T> {
         return ret;
     }
 
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        boolean ret = super.completeExceptionally(ex);
+        setCompleteTS(ticker.read());
+        if (chainedFuture != null) {
+            chainedFuture.completeExceptionally(ex);
+            chainedFuture = null;
+        }
+        return ret;
+    }
+
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
         boolean ret = super.cancel(mayInterruptIfRunning);
-        setCompleteTS(System.currentTimeMillis());
+        setCompleteTS(ticker.read());
         if (chainedFuture != null) {
             chainedFuture.cancel(mayInterruptIfRunning);
             chainedFuture = null;
@@ -0,0 +1,97 @@
+package com.marvinware.utils;
+
+import com.marvinware.ConcurrencyLimit;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latency gradient (Vegas style) concurrency limit.
+ * <p>
+ * Compares each supplier run's latency with a slow moving average of recent latencies.  While runs are no slower than
+ * the average (times a tolerance) the limit grows by a queue allowance of sqrt(limit); as runs slow down, the
+ * gradient drops below 1 and the limit shrinks in proportion, down to half per sample.  Failures back off the limit
+ * like AIMD.  The limit only grows while at least half of it is in use.
+ * <p>
+ * The state is an immutable record swapped by CAS, so sampling never blocks.
+ */
+public class GradientConcurrencyLimit implements ConcurrencyLimit {
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int LONG_WINDOW = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicReference<State> state;
+
+    /**
+     * Instantiates a new Gradient concurrency limit.
+     *
+     * @param initialLimit the initial limit
+     * @param minLimit     the min limit
+     * @param maxLimit     the max limit
+     */
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit bounds: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.state = new AtomicReference<>(new State(Math.max(minLimit, Math.min(maxLimit, initialLimit)), 0.0, 0));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) state.get().estimatedLimit;
+    }
+
+    @Override
+    public void onSample(long supplierNanos, int inFlight, boolean failed) {
+        while (true) {
+            State current = state.get();
+            State next = next(current, supplierNanos, inFlight, failed);
+            if (state.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    private State next(State current, long supplierNanos, int inFlight, boolean failed) {
+        if (failed) {
+            return new State(clamp(current.estimatedLimit * BACKOFF_RATIO), current.longRtt, current.samples);
+        }
+        // Warm the average up quickly, then let it move slowly so it stands for the upstream's unloaded latency.
+        int samples = Math.min(LONG_WINDOW, current.samples + 1);
+        double longRtt = current.longRtt + (supplierNanos - current.longRtt) / samples;
+        if (supplierNanos <= 0L) {
+            return new State(current.estimatedLimit, longRtt, samples);
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / supplierNanos));
+        double newLimit;
+        if (gradient >= 1.0 && inFlight * 2 < current.estimatedLimit) {
+            // not using the limit: no evidence it could be higher
+            newLimit = current.estimatedLimit;
+        } else {
+            newLimit = current.estimatedLimit * gradient + Math.sqrt(current.estimatedLimit);
+            newLimit = current.estimatedLimit * (1.0 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+        return new State(clamp(newLimit), longRtt, samples);
+    }
+
+    private double clamp(double limit) {
+        return Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    private static final class State {
+        private final double estimatedLimit;
+        private final double longRtt;
+        private final int samples;
+
+        private State(double estimatedLimit, double longRtt, int samples) {
+            this.estimatedLimit = estimatedLimit;
+            this.longRtt = longRtt;
+            this.samples = samples;
+        }
+    }
+}
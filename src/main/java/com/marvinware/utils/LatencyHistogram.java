@@ -0,0 +1,170 @@
+package com.marvinware.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded memory, log-bucketed (HDR style) latency histogram.
+ * <p>
+ * Values are grouped by their highest set bit, and each power of two range is split into 16 linear sub-buckets, so
+ * any recorded value is reported within ~6% of its true value.  Values below 16 are recorded exactly.  Recording is a
+ * single atomic increment: no locks and no allocation.
+ * <p>
+ * Like a LongAdder, the counts are striped: a thread records into the stripe its id hashes to, and the stripes are only
+ * added up by snapshot().  There is one stripe until a record() loses a race, then the stripes double, up to four
+ * (or fewer on a small host).  Cache hits take about the same time, so without stripes all cores would increment the
+ * same bucket.
+ * <p>
+ * A stripe is 960 counts, 7.5 KiB, so a histogram takes 7.5 KiB uncontended and at most 30 KiB however many cores
+ * contend; the three histograms in a CachingSupplier's stats stay between about 23 KiB and 90 KiB.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private static final int MAX_STRIPES =
+            Math.min(4, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private volatile AtomicLongArray[] stripes = {new AtomicLongArray(BUCKET_COUNT)};
+
+    /**
+     * Record a value.  Negative values are ignored.
+     *
+     * @param value the value, typically in nanoseconds
+     */
+    public void record(long value) {
+        if (value >= 0L) {
+            int index = bucketIndex(value);
+            AtomicLongArray[] current = stripes;
+            AtomicLongArray counts = current[stripeIndex(current.length)];
+            long count = counts.get(index);
+            if (!counts.compareAndSet(index, count, count + 1L)) {
+                counts.getAndIncrement(index);
+                if (current.length < MAX_STRIPES) {
+                    grow(current);
+                }
+            }
+        }
+    }
+
+    // Fibonacci hash of the thread id, so threads with consecutive ids spread over the stripes
+    private static int stripeIndex(int stripeCount) {
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32) & (stripeCount - 1);
+    }
+
+    private synchronized void grow(AtomicLongArray[] current) {
+        if (stripes != current) {
+            return;
+        }
+        // the old stripes are kept, so counts recorded while growing are not lost
+        AtomicLongArray[] grown = new AtomicLongArray[current.length * 2];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(BUCKET_COUNT);
+        }
+        stripes = grown;
+    }
+
+    /**
+     * Reset all counts.
+     */
+    public void reset() {
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts.set(i, 0L);
+            }
+        }
+    }
+
+    /**
+     * Copy the counts.  Writers are not blocked, so a snapshot taken under load is a close, not exact, view.
+     *
+     * @param reset reset each bucket as it is read
+     * @return the snapshot
+     */
+    public Snapshot snapshot(boolean reset) {
+        long[] copy = new long[BUCKET_COUNT];
+        long total = 0L;
+        for (AtomicLongArray counts : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = reset ? counts.getAndSet(i, 0L) : counts.get(i);
+                copy[i] += count;
+                total += count;
+            }
+        }
+        return new Snapshot(copy, total);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + (index & (SUB_BUCKET_COUNT - 1))) << shift;
+        return lowest + (1L << shift) - 1L;
+    }
+
+    /**
+     * Immutable copy of a LatencyHistogram.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts, long totalCount) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+        }
+
+        /**
+         * Gets total count.
+         *
+         * @return the total count
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Gets the value at a percentile.
+         *
+         * @param percentile the percentile, 0.0 to 100.0
+         * @return the highest value equivalent to the percentile's bucket, or 0 when nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0L) {
+                return 0L;
+            }
+            long target = Math.max(1L, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return highestEquivalentValue(i);
+                }
+            }
+            return highestEquivalentValue(counts.length - 1);
+        }
+
+        /**
+         * To json string.
+         *
+         * @return the json string with the p50, p90, p99 and p999 values
+         */
+        public String toJson() {
+            return "{\"count\":" + totalCount + ",\"p50\":" + getValueAtPercentile(50.0) +
+                    ",\"p90\":" + getValueAtPercentile(90.0) + ",\"p99\":" + getValueAtPercentile(99.0) +
+                    ",\"p999\":" + getValueAtPercentile(99.9) + "}";
+        }
+    }
+}
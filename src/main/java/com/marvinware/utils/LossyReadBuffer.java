@@ -0,0 +1,94 @@
+package com.marvinware.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Striped, bounded, lossy buffer of read events.
+ * <p>
+ * Readers record with one CAS into a stripe picked by thread, and never wait: when a stripe is full the event is
+ * dropped, which only costs the eviction policy a little accuracy.  A single drainer at a time empties the stripes.
+ *
+ * @param <E> the event type
+ */
+public final class LossyReadBuffer<E> {
+    private static final int STRIPE_SIZE = 64;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe<E>[] stripes;
+    private final int stripeMask;
+
+    /**
+     * Instantiates a new Lossy read buffer with a stripe per CPU, rounded up to a power of two.
+     */
+    public LossyReadBuffer() {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        stripes = newStripes(count);
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        stripeMask = count - 1;
+    }
+
+    // a generic array can not be created directly; the array never escapes, so the cast is safe
+    @SuppressWarnings("unchecked")
+    private static <E> Stripe<E>[] newStripes(int count) {
+        return (Stripe<E>[]) new Stripe<?>[count];
+    }
+
+    /**
+     * Record an event.
+     *
+     * @param e the event
+     * @return true if the thread's stripe is now full, or the event was dropped because it was already full
+     */
+    public boolean offer(E e) {
+        Stripe<E> stripe = stripes[(int) mix(Thread.currentThread().getId()) & stripeMask];
+        long head = stripe.readCounter.get();
+        long tail = stripe.writeCounter.get();
+        if (tail - head >= STRIPE_SIZE) {
+            return true;
+        }
+        if (stripe.writeCounter.compareAndSet(tail, tail + 1L)) {
+            stripe.buffer.lazySet((int) tail & STRIPE_MASK, e);
+            return tail + 1L - head >= STRIPE_SIZE;
+        }
+        return false;
+    }
+
+    /**
+     * Drain the recorded events.  Only one thread may drain at a time.
+     *
+     * @param consumer the consumer of the events
+     */
+    public void drainTo(Consumer<E> consumer) {
+        for (Stripe<E> stripe : stripes) {
+            long head = stripe.readCounter.get();
+            long tail = stripe.writeCounter.get();
+            while (head < tail) {
+                int index = (int) head & STRIPE_MASK;
+                E e = stripe.buffer.get(index);
+                if (e == null) {
+                    // claimed but not yet written: pick it up on the next drain
+                    break;
+                }
+                stripe.buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            stripe.readCounter.set(head);
+        }
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        return x ^ (x >>> 33);
+    }
+
+    private static final class Stripe<E> {
+        private final AtomicLong readCounter = new AtomicLong();
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(STRIPE_SIZE);
+    }
+}
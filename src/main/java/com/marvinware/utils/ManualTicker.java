@@ -0,0 +1,47 @@
+package com.marvinware.utils;
+
+import com.marvinware.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ticker that only moves when it is advanced, for deterministic tests and simulations.
+ */
+public class ManualTicker implements Ticker {
+    private final AtomicLong now;
+
+    /**
+     * Instantiates a new Manual ticker, starting at one second.
+     */
+    public ManualTicker() {
+        this(TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    /**
+     * Instantiates a new Manual ticker.
+     *
+     * @param startNanos the first reading, must be positive
+     */
+    public ManualTicker(long startNanos) {
+        if (startNanos <= 0L) {
+            throw new IllegalArgumentException("Ticker readings must be positive: " + startNanos);
+        }
+        this.now = new AtomicLong(startNanos);
+    }
+
+    @Override
+    public long read() {
+        return now.get();
+    }
+
+    /**
+     * Advance the ticker.
+     *
+     * @param duration the duration
+     * @param unit     the time unit of the duration
+     */
+    public void advance(long duration, TimeUnit unit) {
+        now.addAndGet(unit.toNanos(duration));
+    }
+}
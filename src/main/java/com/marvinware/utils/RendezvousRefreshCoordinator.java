@@ -0,0 +1,61 @@
+package com.marvinware.utils;
+
+import com.marvinware.RefreshCoordinator;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * Refresh coordinator over a known membership, electing leaders by rendezvous (highest random weight) hashing: each
+ * node scores each supplier id, and the highest score leads.  It needs no messages between nodes, spreads the
+ * suppliers evenly, and when a node joins or leaves only the suppliers it led, or now leads, move.
+ * <p>
+ * The membership map may be shared and changed while running, e.g. by a discovery client.
+ */
+public class RendezvousRefreshCoordinator implements RefreshCoordinator {
+    private final String localNodeId;
+    private final Map<String, InetSocketAddress> members;
+
+    /**
+     * Instantiates a new Rendezvous refresh coordinator.
+     *
+     * @param localNodeId the id of this node, which should be one of the members
+     * @param members     the addresses of the members by node id
+     */
+    public RendezvousRefreshCoordinator(String localNodeId, Map<String, InetSocketAddress> members) {
+        this.localNodeId = localNodeId;
+        this.members = members;
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return localNodeId;
+    }
+
+    @Override
+    public String getLeader(String supplierId) {
+        String leader = localNodeId;
+        long best = Long.MIN_VALUE;
+        for (String nodeId : members.keySet()) {
+            long score = score(nodeId, supplierId);
+            if (score > best || (score == best && nodeId.compareTo(leader) < 0)) {
+                best = score;
+                leader = nodeId;
+            }
+        }
+        return leader;
+    }
+
+    @Override
+    public InetSocketAddress getAddress(String nodeId) {
+        return members.get(nodeId);
+    }
+
+    // SplitMix64 finalizer over both ids; String.hashCode() is the same in every JVM, so every node agrees
+    static long score(String nodeId, String supplierId) {
+        long z = nodeId.hashCode() * 0x9E3779B97F4A7C15L + supplierId.hashCode();
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,268 @@
+package com.marvinware.utils;
+
+import com.marvinware.Ticker;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel: four levels of 64 buckets, each level's bucket spanning a full turn of the level below.
+ * <p>
+ * Scheduling is O(1) and never blocks: a task goes on a lock-free queue, and the wheel's single daemon thread files
+ * it into the bucket its deadline falls in.  Each tick the thread fires the current bottom level bucket and, when a
+ * level turns over, cascades the next level's bucket down.  Tasks never fire early, and at most about one tick late.
+ * Cancelling only marks the timeout; it is dropped when its bucket comes up.  With nothing scheduled the thread
+ * parks, and after a second idle it ends; the next schedule starts a new one, so an idle wheel holds no thread.
+ * <p>
+ * Tasks run on the wheel thread and must be short.
+ */
+public final class TimerWheel implements AutoCloseable {
+    private static final int BUCKET_BITS = 6;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int LEVELS = 4;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private static final System.Logger logger = System.getLogger(TimerWheel.class.getName());
+
+    private final String name;
+    private final Ticker ticker;
+    private final long tickNanos;
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Thread worker;
+    private volatile boolean closed = false;
+
+    // confined to the worker thread, handed over through running
+    private final Bucket[][] wheel = new Bucket[LEVELS][BUCKETS];
+    private long currentTick;
+    private long scheduledCount;
+
+    /**
+     * Instantiates a new Timer wheel with a 10 millisecond tick on the system ticker.
+     *
+     * @param name the worker thread name
+     */
+    public TimerWheel(String name) {
+        this(name, Ticker.systemTicker(), 10L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Instantiates a new Timer wheel.  The worker thread is started by the first schedule.
+     *
+     * @param name     the worker thread name
+     * @param ticker   the ticker deadlines are measured with
+     * @param tick     the tick duration
+     * @param tickUnit the time unit of the tick
+     */
+    public TimerWheel(String name, Ticker ticker, long tick, TimeUnit tickUnit) {
+        this.name = name;
+        this.ticker = ticker;
+        this.tickNanos = Math.max(1L, tickUnit.toNanos(tick));
+        for (Bucket[] level : wheel) {
+            for (int i = 0; i < BUCKETS; i++) {
+                level[i] = new Bucket();
+            }
+        }
+        this.currentTick = ticker.read() / tickNanos;
+    }
+
+    /**
+     * Schedule a task.
+     *
+     * @param task  the task
+     * @param delay the delay
+     * @param unit  the time unit of the delay
+     * @return the timeout, which can be cancelled; once the wheel is closed it comes back already cancelled
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = ticker.read() + Math.max(0L, unit.toNanos(delay));
+        // round up: a task never fires before its deadline
+        Timeout timeout = new Timeout(task, (deadline + tickNanos - 1L) / tickNanos);
+        if (closed) {
+            timeout.cancel();
+            return timeout;
+        }
+        pending.add(timeout);
+        if (running.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::run);
+            thread.setDaemon(true);
+            thread.setName(name);
+            worker = thread;
+            thread.start();
+        } else {
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    /**
+     * Gets the number of tasks filed in the wheel, including cancelled ones not yet dropped.  Only exact when read
+     * from a task.
+     *
+     * @return the scheduled count
+     */
+    public long getScheduledCount() {
+        return scheduledCount;
+    }
+
+    /**
+     * Stop the worker thread.  Tasks not yet fired are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        long idleSince = 0L;
+        while (!closed) {
+            long nowTick = ticker.read() / tickNanos;
+            if (scheduledCount == 0L) {
+                // nothing is filed: skip the idle ticks rather than walk them
+                currentTick = Math.max(currentTick, nowTick);
+            }
+            transferPending();
+            while (currentTick < nowTick) {
+                currentTick++;
+                cascade();
+                fire(wheel[0][(int) (currentTick & BUCKET_MASK)]);
+            }
+            transferPending();
+            if (scheduledCount != 0L || !pending.isEmpty()) {
+                idleSince = 0L;
+                LockSupport.parkNanos(this, tickNanos);
+            } else if (idleSince == 0L) {
+                idleSince = System.nanoTime();
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            } else if (System.nanoTime() - idleSince < IDLE_NANOS) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            } else {
+                // A schedule that sees running still set only unparks, so check pending once more after clearing it
+                running.set(false);
+                if (pending.isEmpty() || !running.compareAndSet(false, true)) {
+                    return;
+                }
+                idleSince = 0L;
+            }
+        }
+        running.set(false);
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.deadlineTick <= currentTick) {
+                run(timeout);
+            } else {
+                insert(timeout);
+            }
+        }
+    }
+
+    private void insert(Timeout timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BUCKET_BITS * (level + 1))) {
+            level++;
+        }
+        // beyond the top level's range: park it a full turn out and let it cascade back around
+        long tick = level == LEVELS - 1 && delta >= 1L << (BUCKET_BITS * LEVELS) ?
+                currentTick + (1L << (BUCKET_BITS * LEVELS)) - 1L : timeout.deadlineTick;
+        wheel[level][(int) ((tick >>> (BUCKET_BITS * level)) & BUCKET_MASK)].add(timeout);
+        scheduledCount++;
+    }
+
+    // When a level turns over, the next level's current bucket is due within one turn of the level below
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << (BUCKET_BITS * level)) - 1L)) != 0L) {
+                return;
+            }
+            Bucket bucket = wheel[level][(int) ((currentTick >>> (BUCKET_BITS * level)) & BUCKET_MASK)];
+            Timeout timeout = bucket.clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                scheduledCount--;
+                if (!timeout.cancelled) {
+                    if (timeout.deadlineTick <= currentTick) {
+                        run(timeout);
+                    } else {
+                        insert(timeout);
+                    }
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    private void fire(Bucket bucket) {
+        Timeout timeout = bucket.clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            scheduledCount--;
+            if (!timeout.cancelled) {
+                if (timeout.deadlineTick <= currentTick) {
+                    run(timeout);
+                } else {
+                    insert(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void run(Timeout timeout) {
+        if (timeout.cancelled) {
+            return;
+        }
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            logger.log(System.Logger.Level.ERROR, "TimerWheel task failed", e);
+        }
+    }
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled = false;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancel the task if it has not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    // Singly linked list of timeouts
+    private static final class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.next = head;
+            head = timeout;
+        }
+
+        Timeout clear() {
+            Timeout timeout = head;
+            head = null;
+            return timeout;
+        }
+    }
+}
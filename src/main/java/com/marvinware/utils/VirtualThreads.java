@@ -0,0 +1,65 @@
+package com.marvinware.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads when the running JVM has them (Java 21+), while the package itself still builds and runs
+ * on Java 17.
+ */
+public final class VirtualThreads {
+    private static final System.Logger logger = System.getLogger(VirtualThreads.class.getName());
+    private static final ThreadFactory factory = lookupFactory();
+
+    private VirtualThreads() { }
+
+    /**
+     * Is available boolean.
+     *
+     * @return true if virtual threads can be created in this JVM
+     */
+    public static boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Gets a factory for virtual threads.
+     *
+     * @return the thread factory
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    public static ThreadFactory factory() {
+        if (factory == null) {
+            throw new UnsupportedOperationException("Virtual threads are not available in Java " + Runtime.version());
+        }
+        return factory;
+    }
+
+    /**
+     * New virtual thread per task executor.
+     *
+     * @return the executor service
+     * @throws UnsupportedOperationException if virtual threads are not available
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory());
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available in Java " + Runtime.version(), e);
+        }
+    }
+
+    private static ThreadFactory lookupFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factoryMethod.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.log(System.Logger.Level.DEBUG, "Virtual threads are not available: " + e);
+            return null;
+        }
+    }
+}
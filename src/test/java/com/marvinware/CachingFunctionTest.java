@@ -0,0 +1,256 @@
+package com.marvinware;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingFunctionTest {
+
+    @Test
+    public void perKeySingleFlightTest() throws InterruptedException {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 200;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return 1;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return false;
+            }
+        };
+
+        Map<String, AtomicInteger> callsByKey = new ConcurrentHashMap<>();
+        CachingFunction<String, String> cachingFunction = new CachingFunction<>("fn1", config, key -> {
+            callsByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return key.toUpperCase();
+        });
+
+        // concurrent callers of the same key share one call; different keys do not wait on each other
+        Thread[] threads = new Thread[40];
+        String[] results = new String[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int tIndex = t;
+            String key = (t % 2 == 0) ? "a" : "b";
+            threads[t] = new Thread(() -> results[tIndex] = cachingFunction.apply(key));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        for (int t = 0; t < threads.length; t++) {
+            assertEquals((t % 2 == 0) ? "A" : "B", results[t]);
+        }
+        assertEquals(1, callsByKey.get("a").get());
+        assertEquals(1, callsByKey.get("b").get());
+        assertEquals(2, cachingFunction.size());
+
+        CachingSupplier.StatsSnapshot snapshot = cachingFunction.getStatsSnapshot(false);
+        assertEquals(threads.length, snapshot.getCount());
+        assertEquals(2, snapshot.getResultsFromSupplier());
+
+        // expired, idle keys are removed by cleanup
+        Thread.sleep(250);
+        cachingFunction.cleanUp();
+        assertEquals(0, cachingFunction.size());
+        assertEquals("A", cachingFunction.apply("a"));
+        assertEquals(2, callsByKey.get("a").get());
+    }
+
+    @Test
+    public void boundedSizeTest() {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 60000;
+            }
+
+            @Override
+            public long getMaximumSize() {
+                return 100;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return false;
+            }
+        };
+
+        AtomicInteger calls = new AtomicInteger();
+        CachingFunction<Integer, Integer> cachingFunction = new CachingFunction<>("fn2", config, key -> {
+            calls.incrementAndGet();
+            return key * 2;
+        });
+
+        // a small hot set
+        for (int i = 0; i < 50; i++) {
+            for (int key = 0; key < 10; key++) {
+                assertEquals(key * 2, cachingFunction.apply(key));
+            }
+        }
+        assertEquals(10, calls.get());
+
+        // a scan over a long tail of one-off keys, while the hot set stays in use
+        for (int key = 1000; key < 6000; key++) {
+            cachingFunction.apply(key);
+            if (key % 10 == 0) {
+                cachingFunction.apply((key / 10) % 10);
+            }
+        }
+        cachingFunction.cleanUp();
+        assertTrue(cachingFunction.size() <= 100);
+
+        // the hot set survived the scan
+        calls.set(0);
+        for (int key = 0; key < 10; key++) {
+            assertEquals(key * 2, cachingFunction.apply(key));
+        }
+        assertEquals(0, calls.get());
+
+        CachingSupplier.StatsSnapshot snapshot = cachingFunction.getStatsSnapshot(false);
+        assertTrue(snapshot.getEvictions() >= 4900);
+        assertTrue(cachingFunction.getJsonStats(false).contains("\"evictions\":" + snapshot.getEvictions()));
+    }
+
+    @Test
+    public void concurrentWritesStayBoundedTest() throws InterruptedException {
+
+        // Every key reports the policy size whenever the sketch hashes it, i.e. from inside a drain.  One key blocks
+        // the drain that adds it, so the write buffer can be refilled while that drain holds the eviction lock.
+        int maximumSize = 10;
+        AtomicReference<WindowTinyLfuPolicy<ProbeKey, Integer>> policyRef = new AtomicReference<>();
+        AtomicLong maxSizeInDrain = new AtomicLong();
+        AtomicBoolean blockNextDrain = new AtomicBoolean();
+        CountDownLatch draining = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable onHash = () -> {
+            maxSizeInDrain.accumulateAndGet(policyRef.get().size(), Math::max);
+            if (blockNextDrain.compareAndSet(true, false)) {
+                draining.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ConcurrentMap<ProbeKey, WindowTinyLfuPolicy.Node<ProbeKey, Integer>> map = new ConcurrentHashMap<>();
+        WindowTinyLfuPolicy<ProbeKey, Integer> policy =
+                new WindowTinyLfuPolicy<>(map, new CachingSupplier.Stats("policy"), maximumSize);
+        policyRef.set(policy);
+
+        for (int id = 0; id < maximumSize; id++) {
+            policy.recordWrite(new WindowTinyLfuPolicy.Node<>(new ProbeKey(id, onHash), null));
+        }
+        assertEquals(maximumSize, policy.size());
+
+        blockNextDrain.set(true);
+        Thread drainer = new Thread(() ->
+                policy.recordWrite(new WindowTinyLfuPolicy.Node<>(new ProbeKey(-1, onHash), null)));
+        drainer.start();
+        assertTrue(draining.await(5, TimeUnit.SECONDS));
+
+        // the drain holds the lock, so these only fill the write buffer
+        for (int id = 0; id < WindowTinyLfuPolicy.WRITE_BUFFER_SIZE; id++) {
+            policy.recordWrite(new WindowTinyLfuPolicy.Node<>(new ProbeKey(1000 + id, onHash), null));
+        }
+        release.countDown();
+        drainer.join(5000);
+        assertFalse(drainer.isAlive());
+
+        // the drain evicted as it went rather than once the buffer was empty
+        assertTrue(maxSizeInDrain.get() <= maximumSize + 1, "size in drain: " + maxSizeInDrain.get());
+        assertEquals(maximumSize, policy.size());
+    }
+
+    @Test
+    public void expiryDoesNotWaitOnDrainTest() throws InterruptedException {
+
+        // a drain blocked while it holds the eviction lock, and a full write buffer behind it
+        int maximumSize = 10;
+        AtomicBoolean blockNextDrain = new AtomicBoolean();
+        CountDownLatch draining = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable onHash = () -> {
+            if (blockNextDrain.compareAndSet(true, false)) {
+                draining.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        WindowTinyLfuPolicy<ProbeKey, Integer> policy = new WindowTinyLfuPolicy<>(new ConcurrentHashMap<>(),
+                new CachingSupplier.Stats("policy"), maximumSize);
+        WindowTinyLfuPolicy.Node<ProbeKey, Integer> expiring =
+                new WindowTinyLfuPolicy.Node<>(new ProbeKey(0, onHash), null);
+        policy.recordWrite(expiring);
+
+        blockNextDrain.set(true);
+        Thread drainer = new Thread(() ->
+                policy.recordWrite(new WindowTinyLfuPolicy.Node<>(new ProbeKey(-1, onHash), null)));
+        drainer.start();
+        assertTrue(draining.await(5, TimeUnit.SECONDS));
+        for (int id = 0; id < WindowTinyLfuPolicy.WRITE_BUFFER_SIZE; id++) {
+            policy.recordWrite(new WindowTinyLfuPolicy.Node<>(new ProbeKey(1000 + id, onHash), null));
+        }
+
+        // the timer thread's removal returns at once, and the next drain applies it
+        Thread timer = new Thread(() -> policy.recordExpiry(expiring));
+        timer.start();
+        timer.join(5000);
+        assertFalse(timer.isAlive());
+        release.countDown();
+        drainer.join(5000);
+        policy.drain();
+        assertEquals(maximumSize, policy.size());
+    }
+
+    private static final class ProbeKey {
+        private final int id;
+        private final Runnable onHash;
+
+        ProbeKey(int id, Runnable onHash) {
+            this.id = id;
+            this.onHash = onHash;
+        }
+
+        @Override
+        public int hashCode() {
+            onHash.run();
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ProbeKey && ((ProbeKey) o).id == id;
+        }
+    }
+}
@@ -1,9 +1,28 @@
 package com.marvinware;
 
+import com.marvinware.utils.ManualTicker;
+import com.marvinware.utils.VirtualThreads;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static com.marvinware.CachingSupplierConfig.*;
 import static java.util.Map.entry;
@@ -147,4 +166,585 @@ public class CachingSupplierManagerTest {
 
     }
 
+    @Test
+    public void asyncTest() {
+        String configPrefix = "async.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "10000"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "1"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "100"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "false"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+
+        CachingSupplierManager<Long> manager = new CachingSupplierManager<>(config);
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        manager.registerSupplier("async1", () -> {
+            supplierCalls.incrementAndGet();
+            try {
+                // bounded, so a getAsync() that wrongly waits for the supplier fails the test instead of hanging it
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return System.currentTimeMillis();
+        });
+
+        // every call returns while the supplier is still held upstream
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(manager.getAsync("async1"));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            assertFalse(future.isDone());
+        }
+        release.countDown();
+
+        Long first = futures.get(0).join();
+        for (CompletableFuture<Long> future : futures) {
+            assertEquals(first, future.join());
+        }
+        assertEquals(1, supplierCalls.get());
+
+        CompletableFuture<Long> hit = manager.getAsync("async1");
+        assertTrue(hit.isDone());
+        assertEquals(first, hit.join());
+        assertTrue(manager.getJsonStats("async1", false).contains("\"count\":1001,"));
+    }
+
+    @Test
+    public void timeoutTest() throws InterruptedException {
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return 1;
+            }
+
+            @Override
+            public long getStaleIfErrorTime() {
+                return 5000;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return false;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        AtomicInteger supplierCalls = new AtomicInteger();
+        AtomicReference<CountDownLatch> release = new AtomicReference<>(new CountDownLatch(1));
+        manager.registerSupplier("timeout1", () -> {
+            int call = supplierCalls.incrementAndGet();
+            try {
+                release.get().await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return call;
+        });
+
+        // no previous result to fall back to
+        assertThrows(CachingSupplierTimeoutException.class, () -> manager.get("timeout1", 50, TimeUnit.MILLISECONDS));
+        release.get().countDown();
+        assertEquals(1, manager.get("timeout1", 5, TimeUnit.SECONDS));
+
+        // a stale result inside the stale-if-error window: the deadline passes during the refresh and the previous
+        // result is returned
+        release.set(new CountDownLatch(1));
+        ticker.advance(1001, TimeUnit.MILLISECONDS);
+        assertEquals(1, manager.get("timeout1", 50, TimeUnit.MILLISECONDS));
+        assertEquals(CachingSupplier.SupplierState.fetching, manager.getCachingSupplier("timeout1").getState());
+
+        // the refresh keeps running and is cached for later callers
+        release.get().countDown();
+        assertEquals(2, manager.get("timeout1", 5, TimeUnit.SECONDS));
+        assertEquals(2, supplierCalls.get());
+
+        // past the window, a result is too old to fall back to, even with cleanup off
+        release.set(new CountDownLatch(1));
+        ticker.advance(6001, TimeUnit.MILLISECONDS);
+        assertThrows(CachingSupplierTimeoutException.class, () -> manager.get("timeout1", 50, TimeUnit.MILLISECONDS));
+        release.get().countDown();
+        assertEquals(3, manager.get("timeout1", 5, TimeUnit.SECONDS));
+        assertTrue(manager.getJsonStats("timeout1", false).contains("\"resultsFromTimeoutFallback\":1,"));
+    }
+
+    @Test
+    public void expiryTest() throws InterruptedException {
+        String configPrefix = "test4.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "100"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "0"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "true"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+
+        CachingSupplierManager<Long> manager = new CachingSupplierManager<>(config);
+        for (int i = 0; i < 100; i++) {
+            manager.registerSupplier("expiry" + i, System::nanoTime);
+            manager.get("expiry" + i);
+        }
+
+        // each result schedules its own expiry: all are cleared after the TTL, not on the 10 second polling period
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (int i = 0; i < 100; i++) {
+            while (manager.getCachingSupplier("expiry" + i).getState() != CachingSupplier.SupplierState.init &&
+                    System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(CachingSupplier.SupplierState.init, manager.getCachingSupplier("expiry" + i).getState());
+        }
+    }
+
+    @Test
+    public void manualTickerExpiryTest() throws InterruptedException {
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        // expiry is timed by the supplier's ticker, with the default scheduler and with one on the system ticker
+        try (CachingScheduler systemScheduler = new CachingScheduler()) {
+            // on a wheel of the injected scheduler, so closing it stops that expiry too
+            assertNotSame(systemScheduler.start().getExpiryTimer(), systemScheduler.getExpiryTimer(ticker));
+            assertSame(systemScheduler.getExpiryTimer(ticker), systemScheduler.getExpiryTimer(ticker));
+            List<CachingSupplierManager<Long>> managers = List.of(new CachingSupplierManager<>(config),
+                    new CachingSupplierManager<>(config, systemScheduler));
+            for (CachingSupplierManager<Long> manager : managers) {
+                manager.registerSupplier("manual", System::nanoTime);
+                manager.get("manual");
+            }
+
+            // wall clock time passes, but not the ticker's: nothing expires
+            Thread.sleep(1200);
+            for (CachingSupplierManager<Long> manager : managers) {
+                assertEquals(CachingSupplier.SupplierState.cached, manager.getCachingSupplier("manual").getState());
+            }
+
+            ticker.advance(1500, TimeUnit.MILLISECONDS);
+            for (CachingSupplierManager<Long> manager : managers) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (manager.getCachingSupplier("manual").getState() != CachingSupplier.SupplierState.init &&
+                        System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(CachingSupplier.SupplierState.init, manager.getCachingSupplier("manual").getState());
+            }
+        }
+    }
+
+    @Test
+    public void staleIfErrorWithCleanupTest() throws InterruptedException {
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public long getStaleIfErrorTime() {
+                return 60000;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> failingAfterFirst = () -> {
+            if (calls.incrementAndGet() > 1) {
+                throw new IllegalStateException("upstream down");
+            }
+            return "v";
+        };
+        CachingSupplierManager<String> manager = new CachingSupplierManager<>(config);
+        manager.registerSupplier("sie", failingAfterFirst);
+        assertEquals("v", manager.get("sie"));
+
+        // expiry cleanup runs once the TTL has passed, but keeps the result for the stale-if-error window
+        ticker.advance(2000, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        assertEquals("v", manager.get("sie"));
+
+        // past the window, the result is dropped and the error comes through
+        ticker.advance(60000, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.getCachingSupplier("sie").getState() != CachingSupplier.SupplierState.init &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(CachingSupplier.SupplierState.init, manager.getCachingSupplier("sie").getState());
+        assertThrows(IllegalStateException.class, () -> manager.get("sie"));
+
+        // a CachingFunction does not evict a key whose result is still kept for errors
+        calls.set(0);
+        CachingFunction<String, String> cachingFunction = new CachingFunction<>("sieFn", config,
+                key -> failingAfterFirst.get());
+        assertEquals("v", cachingFunction.apply("k"));
+        ticker.advance(2000, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        cachingFunction.cleanUp();
+        assertEquals(1, cachingFunction.size());
+        assertEquals("v", cachingFunction.apply("k"));
+    }
+
+    @Test
+    public void sharedSchedulerTest() throws InterruptedException {
+        String configPrefix = "test5.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "100"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "0"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "true"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+
+        // managers for different result types share one scheduler, and so its threads
+        CachingScheduler scheduler = new CachingScheduler();
+        CachingSupplierManager<String> strings = new CachingSupplierManager<>(config, scheduler);
+        try {
+            CachingSupplierManager<Long> longs = new CachingSupplierManager<>(config, scheduler);
+            longs.registerSupplier("long1", System::nanoTime);
+            strings.registerSupplier("string1", () -> "s");
+            longs.get("long1");
+            strings.get("string1");
+
+            CountDownLatch sampled = new CountDownLatch(2);
+            ScheduledFuture<?> sampling = longs.scheduleStatsSampling(20, TimeUnit.MILLISECONDS, false, snapshot -> {
+                if (snapshot.getCount() == 1) {
+                    sampled.countDown();
+                }
+            });
+            assertTrue(sampled.await(5, TimeUnit.SECONDS));
+            sampling.cancel(false);
+
+            Thread.sleep(300);
+            assertEquals(CachingSupplier.SupplierState.init, strings.getCachingSupplier("string1").getState());
+        } finally {
+            scheduler.close();
+        }
+        assertFalse(scheduler.isStarted());
+        // after close, expiry is no longer scheduled but gets keep working
+        assertEquals("s", strings.get("string1"));
+    }
+
+    @Test
+    public void warmStartSnapshotTest(@TempDir Path dir) throws Exception {
+        String configPrefix = "test6.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "60000"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "0"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "true"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+        Path snapshot = dir.resolve("cache.snapshot");
+        SnapshotSerializer<String> serializer = SnapshotSerializer.javaSerialization();
+
+        CachingSupplierManager<String> before = new CachingSupplierManager<>(config);
+        before.registerSupplier("warm1", () -> "value1");
+        before.registerSupplier("warm2", () -> "value2");
+        before.registerSupplier("cold", () -> "never fetched");
+        before.get("warm1");
+        before.get("warm2");
+        assertEquals(2, before.writeSnapshot(snapshot, serializer));
+        Thread.sleep(200);
+
+        // a restarted process serves the snapshot at its original age, without calling upstream
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CachingSupplierManager<String> after = new CachingSupplierManager<>(config);
+        after.registerSupplier("warm1", () -> "upstream" + upstreamCalls.incrementAndGet());
+        after.registerSupplier("cold", () -> "upstream" + upstreamCalls.incrementAndGet());
+        assertEquals(1, after.loadSnapshot(snapshot, serializer));
+        assertEquals(CachingSupplier.SupplierState.cached, after.getCachingSupplier("warm1").getState());
+        assertTrue(after.getCachingSupplier("warm1").getResultAge() >= 200);
+        assertEquals("value1", after.get("warm1"));
+        assertEquals("upstream1", after.get("cold"));
+        assertEquals(1, upstreamCalls.get());
+
+        // a missing snapshot is a cold start, a corrupt one is an error
+        assertEquals(0, after.loadSnapshot(dir.resolve("missing"), serializer));
+        Files.write(snapshot, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> after.loadSnapshot(snapshot, serializer));
+        // an entry length beyond the end of the file is rejected before it is allocated
+        Files.write(snapshot, ByteBuffer.allocate(16).putInt(0x43534E50).putInt(1).putInt(1)
+                .putInt(Integer.MAX_VALUE - 8).array());
+        assertThrows(IOException.class, () -> after.loadSnapshot(snapshot, serializer));
+    }
+
+    @Test
+    public void warmUpTest() throws InterruptedException {
+        String configPrefix = "test7.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "60000"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "0"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "false"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ids.add("warmup" + i);
+            manager.registerSupplier("warmup" + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                running.decrementAndGet();
+                return upstreamCalls.incrementAndGet();
+            });
+        }
+        manager.registerSupplier("failing", () -> {
+            throw new IllegalStateException("down");
+        });
+        manager.get("warmup0");
+        ids.add("failing");
+
+        // bounded parallelism, rate limited, and already cached suppliers are not run again
+        WarmUpReport report = manager.warmUp(ids, 2, 50, 5, TimeUnit.SECONDS);
+        assertEquals(5, report.count(WarmUpReport.Outcome.warmed));
+        assertEquals(WarmUpReport.Outcome.alreadyCached, report.getEntry("warmup0").getOutcome());
+        assertEquals(WarmUpReport.Outcome.failed, report.getEntry("failing").getOutcome());
+        assertFalse(report.isComplete());
+        assertTrue(report.getEntry("warmup5").getMillis() >= 50);
+        assertTrue(maxRunning.get() <= 2);
+        assertTrue(report.getElapsedMillis() >= 100);
+        assertEquals(6, upstreamCalls.get());
+        manager.get("warmup5");
+        assertEquals(6, upstreamCalls.get());
+
+        // a supplier that throws on start, or an id that is not registered, fails without holding up the others
+        CachingSupplierConfig brokenConfig = new CachingSupplierConfig() {
+            @Override
+            public Executor getSupplierExecutor() {
+                throw new IllegalStateException("no executor");
+            }
+        };
+        manager.registerSupplier("broken", brokenConfig, upstreamCalls::incrementAndGet);
+        manager.registerSupplier("after", upstreamCalls::incrementAndGet);
+        WarmUpReport brokenReport = manager.warmUp(List.of("broken", "missing", "after"), 1, 0, 5, TimeUnit.SECONDS);
+        assertEquals(WarmUpReport.Outcome.failed, brokenReport.getEntry("broken").getOutcome());
+        assertEquals(WarmUpReport.Outcome.failed, brokenReport.getEntry("missing").getOutcome());
+        assertEquals(WarmUpReport.Outcome.warmed, brokenReport.getEntry("after").getOutcome());
+        assertTrue(brokenReport.getElapsedMillis() < 5000);
+
+        // at the deadline, running suppliers time out and the rest are not started
+        manager.registerSupplier("slow", () -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 0;
+        });
+        manager.registerSupplier("late", () -> 0);
+        report = manager.warmUp(List.of("slow", "late"), 1, 0, 100, TimeUnit.MILLISECONDS);
+        assertEquals(WarmUpReport.Outcome.timedOut, report.getEntry("slow").getOutcome());
+        assertEquals(WarmUpReport.Outcome.notStarted, report.getEntry("late").getOutcome());
+        assertTrue(report.toJson().contains("\"id\":\"slow\",\"outcome\":\"timedOut\""));
+    }
+
+    @Test
+    public void warmUpStaleWhileRevalidateTest() throws InterruptedException {
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public long getStaleWhileRevalidateTime() {
+                return 60000;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return false;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        manager.registerSupplier("swr", () -> {
+            int call = upstreamCalls.incrementAndGet();
+            if (call > 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return call;
+        });
+        assertEquals(1, manager.get("swr"));
+        ticker.advance(2000, TimeUnit.MILLISECONDS);
+
+        // a stale but servable result is not warm: the report waits for the refresh, which is still running
+        WarmUpReport report = manager.warmUp(List.of("swr"), 1, 0, 200, TimeUnit.MILLISECONDS);
+        assertEquals(WarmUpReport.Outcome.timedOut, report.getEntry("swr").getOutcome());
+        assertEquals(2, upstreamCalls.get());
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.getCachingSupplier("swr").getState() != CachingSupplier.SupplierState.cached &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, manager.get("swr"));
+        report = manager.warmUp(List.of("swr"), 1, 0, 5, TimeUnit.SECONDS);
+        assertEquals(WarmUpReport.Outcome.alreadyCached, report.getEntry("swr").getOutcome());
+        assertEquals(2, upstreamCalls.get());
+    }
+
+    @Test
+    public void virtualThreadsTest() throws Exception {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 60000;
+            }
+
+            @Override
+            public boolean isCacheCleanupThreadEnabled() {
+                return false;
+            }
+
+            @Override
+            public boolean isVirtualThreadsEnabled() {
+                return true;
+            }
+        };
+
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        List<Thread> supplierThreads = new CopyOnWriteArrayList<>();
+        manager.registerSupplier("virtual", () -> {
+            supplierThreads.add(Thread.currentThread());
+            return supplierThreads.size();
+        });
+
+        // an async run, and a background refresh that would otherwise go to the scheduler's pool
+        assertEquals(1, manager.getAsync("virtual").get(5, TimeUnit.SECONDS));
+        assertEquals(2, manager.refresh("virtual").get(5, TimeUnit.SECONDS));
+        assertEquals(2, supplierThreads.size());
+
+        // without virtual threads in this JVM, both fall back to the platform supplier executor
+        if (VirtualThreads.isAvailable()) {
+            assertSame(CachingSupplierConfig.DefaultSupplierExecutor.Virtual.INSTANCE, config.getSupplierExecutor());
+        } else {
+            assertSame(CachingSupplierConfig.DefaultSupplierExecutor.INSTANCE, config.getSupplierExecutor());
+        }
+        for (Thread thread : supplierThreads) {
+            assertEquals(VirtualThreads.isAvailable(), isVirtual(thread));
+            if (!VirtualThreads.isAvailable()) {
+                assertEquals(CachingSupplierConfig.class.getName() + ".SupplierExecutor", thread.getName());
+            }
+        }
+    }
+
+    // Thread.isVirtual() is only there from Java 21
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void invalidateAndRefreshTest() throws Exception {
+        String configPrefix = "test8.";
+
+        CachingSupplierConfig config = new ConfigProperties(configPrefix, Map.ofEntries(
+                entry(configPrefix + ConfigProperties.CachedResultsTTL, "600000"),
+                entry(configPrefix + ConfigProperties.MaxConcurrentRunningSuppliers, "10"),
+                entry(configPrefix + ConfigProperties.NewSupplierStaggerDelay, "0"),
+                entry(configPrefix + ConfigProperties.CacheCleanupThreadEnabled, "false"),
+                entry(configPrefix + ConfigProperties.PollingPeriodForCleanupThread, "10000")
+        ));
+
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        manager.registerSupplier("changing", () -> {
+            int call = upstreamCalls.incrementAndGet();
+            if (call == 3 || call == 4) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return call;
+        });
+        List<String> invalidated = new ArrayList<>();
+        manager.addInvalidationListener(invalidated::add);
+
+        // a change event drops the result long before its TTL
+        assertEquals(1, manager.get("changing"));
+        assertEquals(1, manager.get("changing"));
+        manager.invalidate("changing");
+        assertEquals(List.of("changing"), invalidated);
+        assertEquals(2, manager.get("changing"));
+
+        // a refresh reloads in the background while the cached result is still served
+        CompletableFuture<Integer> refreshed = manager.refresh("changing");
+        assertEquals(2, manager.get("changing"));
+        assertFalse(refreshed.isDone());
+
+        // a run that started before an invalidation completes for its waiters, but is not cached
+        while (upstreamCalls.get() < 3) {
+            Thread.sleep(1);
+        }
+        manager.invalidate("changing");
+        CompletableFuture<Integer> next = manager.getAsync("changing");
+        release.countDown();
+        assertEquals(3, refreshed.get(5, TimeUnit.SECONDS));
+        assertEquals(4, next.get(5, TimeUnit.SECONDS));
+        assertEquals(4, manager.get("changing"));
+        assertEquals(4, upstreamCalls.get());
+    }
 }
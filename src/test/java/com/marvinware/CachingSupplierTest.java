@@ -1,8 +1,20 @@
 package com.marvinware;
 
+import com.marvinware.utils.GradientConcurrencyLimit;
+import com.marvinware.utils.ManualTicker;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class CachingSupplierTest {
 
@@ -40,4 +52,695 @@ public class CachingSupplierTest {
 
     }
 
+    @Test
+    public void singleFlightTest() throws InterruptedException {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 10000;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return 1;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CachingSupplier<Long> cachedSupplier = new CachingSupplier<>("id2",
+                config,
+                () -> {
+                    supplierCalls.incrementAndGet();
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return System.currentTimeMillis();
+                });
+
+        Thread[] threads = new Thread[50];
+        Long[] results = new Long[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int tIndex = t;
+            threads[t] = new Thread(() -> results[tIndex] = cachedSupplier.get());
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, supplierCalls.get());
+        assertEquals(0, cachedSupplier.getCurrentSupplierCount());
+        assertEquals(CachingSupplier.SupplierState.cached, cachedSupplier.getState());
+        for (Long result : results) {
+            assertEquals(results[0], result);
+        }
+        assertEquals(results[0], cachedSupplier.get());
+
+        CachingSupplier.StatsSnapshot snapshot = cachedSupplier.getStatsSnapshot(true);
+        assertEquals(threads.length + 1, snapshot.getCount());
+        assertEquals(1, snapshot.getResultsFromSupplier());
+        assertEquals(threads.length, snapshot.getResultsFromCache() + snapshot.getResultsFromFuture());
+        assertEquals(0, cachedSupplier.getStatsSnapshot(false).getCount());
+    }
+
+    @Test
+    public void staleWhileRevalidateTest() throws Exception {
+
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return 0;
+            }
+
+            @Override
+            public long getStaleWhileRevalidateTime() {
+                return 5000;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id3", config,
+                () -> awaitAfterFirst(supplierCalls.incrementAndGet(), release));
+
+        assertEquals(1, cachedSupplier.get());
+        ticker.advance(1001, TimeUnit.MILLISECONDS);
+        assertTrue(cachedSupplier.isCacheStale());
+
+        // the stale result is served while the refresh is held up upstream
+        assertEquals(1, CompletableFuture.supplyAsync(cachedSupplier::get).get(5, TimeUnit.SECONDS));
+        assertEquals(1, CompletableFuture.supplyAsync(cachedSupplier::get).get(5, TimeUnit.SECONDS));
+        assertEquals(CachingSupplier.SupplierState.fetching, cachedSupplier.getState());
+        awaitCalls(supplierCalls, 2);
+
+        release.countDown();
+        awaitState(cachedSupplier, CachingSupplier.SupplierState.cached);
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(2, supplierCalls.get());
+
+        CachingSupplier.StatsSnapshot snapshot = cachedSupplier.getStatsSnapshot(false);
+        assertEquals(2, snapshot.getResultsFromStale());
+        assertEquals(1, snapshot.getBackgroundRefreshes());
+    }
+
+    @Test
+    public void refreshAheadTest() throws Exception {
+
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return 0;
+            }
+
+            @Override
+            public double getRefreshAheadFactor() {
+                return 0.5;
+            }
+
+            @Override
+            public long getRefreshAheadAccessWindow() {
+                return 300;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id4", config,
+                () -> awaitAfterFirst(supplierCalls.incrementAndGet(), release));
+
+        assertEquals(1, cachedSupplier.get());
+        ticker.advance(400, TimeUnit.MILLISECONDS);
+        assertEquals(1, cachedSupplier.get());
+        assertEquals(1, supplierCalls.get());
+
+        // past half the TTL, a hot supplier refreshes in the background and keeps serving the fresh result
+        ticker.advance(200, TimeUnit.MILLISECONDS);
+        assertFalse(cachedSupplier.isCacheStale());
+        assertEquals(1, CompletableFuture.supplyAsync(cachedSupplier::get).get(5, TimeUnit.SECONDS));
+        assertEquals(CachingSupplier.SupplierState.fetching, cachedSupplier.getState());
+        awaitCalls(supplierCalls, 2);
+
+        release.countDown();
+        awaitState(cachedSupplier, CachingSupplier.SupplierState.cached);
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(2, supplierCalls.get());
+
+        CachingSupplier.StatsSnapshot snapshot = cachedSupplier.getStatsSnapshot(false);
+        assertEquals(1, snapshot.getResultsFromSupplier());
+        assertEquals(1, snapshot.getRefreshAheadRuns());
+        assertEquals(0, snapshot.getResultsFromStale());
+
+        // An idle supplier is not refreshed ahead of expiry
+        ticker.advance(600, TimeUnit.MILLISECONDS);
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(CachingSupplier.SupplierState.cached, cachedSupplier.getState());
+        assertEquals(2, supplierCalls.get());
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(3, cachedSupplier.get());
+        assertEquals(2, cachedSupplier.getStatsSnapshot(false).getResultsFromSupplier());
+    }
+
+    // Every supplier call after the first waits for the latch, so a test can hold a background run in flight
+    private static int awaitAfterFirst(int call, CountDownLatch release) {
+        if (call > 1) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return call;
+    }
+
+    // The background run is handed to the executor, so it may not have called the supplier yet
+    private static void awaitCalls(AtomicInteger supplierCalls, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (supplierCalls.get() < calls && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(calls, supplierCalls.get());
+    }
+
+    private static void awaitState(CachingSupplier<?> cachedSupplier, CachingSupplier.SupplierState state)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cachedSupplier.getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(state, cachedSupplier.getState());
+    }
+
+    @Test
+    public void failureTest() throws InterruptedException {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 200;
+            }
+
+            @Override
+            public int getMaxConcurrentRunningSuppliers() {
+                return 1;
+            }
+
+            @Override
+            public long getNegativeCachedResultsTTL() {
+                return 300;
+            }
+
+            @Override
+            public long getStaleIfErrorTime() {
+                return 5000;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger(1);
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id5",
+                config,
+                () -> {
+                    int call = supplierCalls.incrementAndGet();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    if (failures.get() > 0) {
+                        throw new IllegalStateException("upstream down");
+                    }
+                    return call;
+                });
+
+        // every waiter on a failed run gets the failure, nobody hangs and the supplier slot is released
+        Thread[] threads = new Thread[20];
+        AtomicInteger errors = new AtomicInteger();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    cachedSupplier.get();
+                } catch (RuntimeException e) {
+                    errors.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(threads.length, errors.get());
+        assertEquals(1, supplierCalls.get());
+        assertEquals(0, cachedSupplier.getCurrentSupplierCount());
+        assertEquals(CachingSupplier.SupplierState.failed, cachedSupplier.getState());
+
+        // inside the negative cache TTL the failure is returned without calling the supplier
+        assertThrows(RuntimeException.class, cachedSupplier::get);
+        assertEquals(1, supplierCalls.get());
+
+        Thread.sleep(350);
+        failures.set(0);
+        assertEquals(2, cachedSupplier.get());
+
+        // stale-if-error serves the last good result while the upstream fails
+        failures.set(1);
+        Thread.sleep(250);
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(3, supplierCalls.get());
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(3, supplierCalls.get());
+
+        CachingSupplier.StatsSnapshot snapshot = cachedSupplier.getStatsSnapshot(false);
+        assertEquals(2, snapshot.getSupplierErrors());
+        assertTrue(snapshot.getNegativeCacheHits() >= 2);
+        assertEquals(2, snapshot.getResultsFromStaleIfError());
+    }
+
+    @Test
+    public void ttlJitterTest() {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public double getCachedResultsTTLJitterPercent() {
+                return 50;
+            }
+
+            @Override
+            public long getTTLJitterSeed() {
+                return 42L;
+            }
+        };
+
+        // each supplier's TTL stays within the jitter range, and the TTLs are spread rather than all the same
+        Set<Long> ttls = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("jitter" + i, config, () -> 1);
+            cachedSupplier.get();
+            long ttl = cachedSupplier.getCurrentCachedResultsTTL();
+            assertTrue(ttl >= 500 && ttl <= 1000, "ttl " + ttl);
+            ttls.add(ttl);
+        }
+        assertTrue(ttls.size() > 10);
+
+        // the same seed, supplier id and generation give the same TTL
+        CachingSupplier<Integer> again = new CachingSupplier<>("jitter0", config, () -> 1);
+        again.get();
+        CachingSupplier<Integer> first = new CachingSupplier<>("jitter0", config, () -> 1);
+        first.get();
+        assertEquals(first.getCurrentCachedResultsTTL(), again.getCurrentCachedResultsTTL());
+    }
+
+    @Test
+    public void adaptiveConcurrencyLimitTest() {
+
+        String prefix = "limit.";
+        CachingSupplierConfig config = new CachingSupplierConfig.ConfigProperties(prefix, Map.of(
+                prefix + CachingSupplierConfig.ConfigProperties.CachedResultsTTL, "10000",
+                prefix + CachingSupplierConfig.ConfigProperties.NewSupplierStaggerDelay, "0",
+                prefix + CachingSupplierConfig.ConfigProperties.CacheCleanupThreadEnabled, "false",
+                prefix + CachingSupplierConfig.ConfigProperties.PollingPeriodForCleanupThread, "10000",
+                prefix + CachingSupplierConfig.ConfigProperties.ConcurrencyLimitType, "aimd",
+                prefix + CachingSupplierConfig.ConfigProperties.MaxConcurrentRunningSuppliers, "4",
+                prefix + CachingSupplierConfig.ConfigProperties.ConcurrencyLimitMax, "8",
+                prefix + CachingSupplierConfig.ConfigProperties.ConcurrencyLimitLatencyThreshold, "50"
+        ));
+
+        AtomicInteger failures = new AtomicInteger(3);
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id7", config, () -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("upstream down");
+            }
+            return 1;
+        });
+        assertEquals(4, cachedSupplier.getConcurrencyLimit());
+
+        // each failed run backs the limit off, down to the min
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RuntimeException.class, cachedSupplier::get);
+        }
+        assertEquals(1, cachedSupplier.getConcurrencyLimit());
+        assertTrue(cachedSupplier.getJsonStats(false).contains("\"concurrencyLimit\":1"));
+
+        // successful runs that use the limit grow it back
+        assertEquals(1, cachedSupplier.get());
+        assertEquals(2, cachedSupplier.getConcurrencyLimit());
+
+        // the gradient limit shrinks as supplier latency rises above its recent average
+        GradientConcurrencyLimit gradient = new GradientConcurrencyLimit(20, 1, 100);
+        for (int i = 0; i < 50; i++) {
+            gradient.onSample(1_000_000L, 20, false);
+        }
+        int healthy = gradient.getLimit();
+        assertTrue(healthy > 20);
+        for (int i = 0; i < 10; i++) {
+            gradient.onSample(20_000_000L, healthy, false);
+        }
+        assertTrue(gradient.getLimit() < healthy);
+    }
+
+    @Test
+    public void adaptiveTTLTest() {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public boolean isAdaptiveTTLEnabled() {
+                return true;
+            }
+
+            @Override
+            public long getMinCachedResultsTTL() {
+                return 200;
+            }
+
+            @Override
+            public long getMaxCachedResultsTTL() {
+                return 5000;
+            }
+
+            @Override
+            public long getAdaptiveTTLReferenceLatency() {
+                return 20;
+            }
+        };
+
+        // a slow upstream stretches the TTL, up to the max
+        CachingSupplier<Integer> slow = new CachingSupplier<>("id8", config, () -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 1;
+        });
+        slow.get();
+        assertEquals(5000, slow.getCurrentCachedResultsTTL());
+        assertEquals("slowUpstream", slow.getCachedResultsTTLReason());
+
+        // a fast upstream shrinks it toward the min
+        CachingSupplier<Integer> fast = new CachingSupplier<>("id9", config, () -> 1);
+        fast.get();
+        assertEquals(200, fast.getCurrentCachedResultsTTL());
+        assertTrue(fast.getJsonStats(false).contains("\"cachedResultsTTL\":200,\"cachedResultsTTLReason\":\"fastUpstream\""));
+
+        // after a failure the upstream is treated as overloaded and the next result is kept for the max
+        AtomicInteger failures = new AtomicInteger(1);
+        CachingSupplier<Integer> failing = new CachingSupplier<>("id10", config, () -> {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("upstream down");
+            }
+            return 1;
+        });
+        assertThrows(RuntimeException.class, failing::get);
+        failing.get();
+        assertEquals(5000, failing.getCurrentCachedResultsTTL());
+        assertEquals("overloaded", failing.getCachedResultsTTLReason());
+    }
+
+    @Test
+    public void tickerTest() {
+
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id11", config, supplierCalls::incrementAndGet);
+
+        // staleness follows the ticker, not the wall clock
+        assertEquals(1, cachedSupplier.get());
+        ticker.advance(1000, TimeUnit.MILLISECONDS);
+        assertEquals(1000, cachedSupplier.getResultAge());
+        assertFalse(cachedSupplier.isCacheStale());
+        assertEquals(1, cachedSupplier.get());
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(cachedSupplier.isCacheStale());
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(0, cachedSupplier.getResultAge());
+
+        // the coarse ticker moves on its own
+        Ticker coarse = Ticker.coarseTicker();
+        long first = coarse.read();
+        assertTrue(first > 0L);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coarse.read() == first && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(coarse.read() > first);
+    }
+
+    @Test
+    public void configReloadTest() {
+
+        ManualTicker ticker = new ManualTicker();
+        String prefix = "reload";
+        Map<String, String> properties = new HashMap<>(Map.of(
+                prefix + "." + CachingSupplierConfig.ConfigProperties.CachedResultsTTL, "1000",
+                prefix + "." + CachingSupplierConfig.ConfigProperties.MaxConcurrentRunningSuppliers, "2",
+                prefix + "." + CachingSupplierConfig.ConfigProperties.NewSupplierStaggerDelay, "0",
+                prefix + "." + CachingSupplierConfig.ConfigProperties.CacheCleanupThreadEnabled, "false",
+                prefix + "." + CachingSupplierConfig.ConfigProperties.PollingPeriodForCleanupThread, "1000"));
+        CachingSupplierConfig.ConfigProperties properties0 = new CachingSupplierConfig.ConfigProperties(prefix, properties);
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return properties0.getCachedResultsTTL();
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id12", config, supplierCalls::incrementAndGet);
+        assertEquals(1, cachedSupplier.get());
+        ticker.advance(1500, TimeUnit.MILLISECONDS);
+        assertTrue(cachedSupplier.isCacheStale());
+
+        // a longer TTL is picked up by the next fetch, without recreating the supplier
+        properties.put(prefix + "." + CachingSupplierConfig.ConfigProperties.CachedResultsTTL, "2000");
+        CachingSupplierConfig.ConfigProperties.Snapshot snapshot = properties0.reload(properties);
+        assertEquals(2000, snapshot.getCachedResultsTTL());
+        assertSame(snapshot, properties0.getSnapshot());
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(2000, cachedSupplier.getCurrentCachedResultsTTL());
+        ticker.advance(1500, TimeUnit.MILLISECONDS);
+        assertFalse(cachedSupplier.isCacheStale());
+        assertEquals(2, cachedSupplier.get());
+
+        // a bad reload throws and keeps the current snapshot
+        properties.put(prefix + "." + CachingSupplierConfig.ConfigProperties.CachedResultsTTL, "soon");
+        assertThrows(IllegalArgumentException.class, () -> properties0.reload(properties));
+        properties.remove(prefix + "." + CachingSupplierConfig.ConfigProperties.CachedResultsTTL);
+        assertThrows(IllegalArgumentException.class, () -> properties0.reload(properties));
+        assertSame(snapshot, properties0.getSnapshot());
+        assertEquals(2000, properties0.getCachedResultsTTL());
+
+        // the deprecated cleanup polling period is optional again
+        properties.put(prefix + "." + CachingSupplierConfig.ConfigProperties.CachedResultsTTL, "3000");
+        properties.remove(prefix + "." + CachingSupplierConfig.ConfigProperties.PollingPeriodForCleanupThread);
+        assertEquals(3000, properties0.reload(properties).getCachedResultsTTL());
+        assertEquals(3000, new CachingSupplierConfig.ConfigProperties(prefix, properties).getCachedResultsTTL());
+    }
+
+    @Test
+    public void invalidateSameTickTest() {
+
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id14", config, supplierCalls::incrementAndGet);
+        assertEquals(1, cachedSupplier.get());
+
+        // the clock does not move: a fetch after the invalidation, in the same tick, is still cached
+        cachedSupplier.invalidate();
+        assertEquals(2, cachedSupplier.get());
+        assertEquals(CachingSupplier.SupplierState.cached, cachedSupplier.getState());
+        assertEquals(2, cachedSupplier.get());
+        cachedSupplier.invalidate();
+        cachedSupplier.invalidate();
+        assertEquals(3, cachedSupplier.get());
+        assertEquals(3, cachedSupplier.get());
+        assertEquals(3, supplierCalls.get());
+    }
+
+    @Test
+    public void negativeCachingOffTest() {
+
+        ManualTicker ticker = new ManualTicker();
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+
+            @Override
+            public long getNewSupplierStaggerDelay() {
+                return 0;
+            }
+
+            @Override
+            public Ticker getTicker() {
+                return ticker;
+            }
+        };
+
+        AtomicInteger supplierCalls = new AtomicInteger();
+        CachingSupplier<String> cachedSupplier = new CachingSupplier<>("id15", config, () -> {
+            if (supplierCalls.incrementAndGet() > 1) {
+                throw new IllegalStateException("upstream down");
+            }
+            return "v";
+        });
+        assertEquals("v", cachedSupplier.get());
+        ticker.advance(1500, TimeUnit.MILLISECONDS);
+
+        // a negative cache TTL of 0 is off: in the same tick, the next call runs the supplier again
+        assertThrows(IllegalStateException.class, cachedSupplier::get);
+        assertNotEquals(CachingSupplier.SupplierState.failed, cachedSupplier.getState());
+        assertThrows(IllegalStateException.class, cachedSupplier::get);
+        assertEquals(3, supplierCalls.get());
+        assertEquals(0, cachedSupplier.getStatsSnapshot(false).getNegativeCacheHits());
+    }
+
+    @Test
+    public void statsJsonTest() {
+
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+        };
+
+        CachingSupplier<Integer> cachedSupplier = new CachingSupplier<>("id13", config, () -> 1);
+        cachedSupplier.get();
+        cachedSupplier.get();
+
+        // every key once, in the document and in the nested histograms
+        Map<String, Object> json = new JsonObjectParser(cachedSupplier.getStatsSnapshot(false).toJson()).parse();
+        assertEquals("id13", json.get("supplierId"));
+        assertEquals("2", json.get("count"));
+        assertEquals("0", json.get("evictions"));
+        assertTrue(json.get("getTimeNanos") instanceof Map);
+    }
+
+    // Just enough JSON to check the stats documents: objects, strings and bare values, failing on a repeated key.
+    private static final class JsonObjectParser {
+        private final String json;
+        private int pos;
+
+        JsonObjectParser(String json) {
+            this.json = json;
+        }
+
+        Map<String, Object> parse() {
+            Map<String, Object> object = parseObject();
+            assertEquals(json.length(), pos, "trailing characters in " + json);
+            return object;
+        }
+
+        private Map<String, Object> parseObject() {
+            expect('{');
+            Map<String, Object> object = new HashMap<>();
+            if (json.charAt(pos) == '}') {
+                pos++;
+                return object;
+            }
+            while (true) {
+                String key = parseString();
+                expect(':');
+                Object value = json.charAt(pos) == '{' ? parseObject() :
+                        json.charAt(pos) == '"' ? parseString() : parseBare();
+                assertFalse(object.containsKey(key), "duplicate key " + key + " in " + json);
+                object.put(key, value);
+                if (json.charAt(pos) == '}') {
+                    pos++;
+                    return object;
+                }
+                expect(',');
+            }
+        }
+
+        private String parseString() {
+            expect('"');
+            int end = json.indexOf('"', pos);
+            String value = json.substring(pos, end);
+            pos = end + 1;
+            return value;
+        }
+
+        private String parseBare() {
+            int start = pos;
+            while (",}".indexOf(json.charAt(pos)) < 0) {
+                pos++;
+            }
+            assertTrue(pos > start, "missing value at " + start + " in " + json);
+            return json.substring(start, pos);
+        }
+
+        private void expect(char c) {
+            assertEquals(c, json.charAt(pos), "at " + pos + " in " + json);
+            pos++;
+        }
+    }
+
 }
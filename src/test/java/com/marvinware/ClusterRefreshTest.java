@@ -0,0 +1,131 @@
+package com.marvinware;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClusterRefreshTest {
+
+    @Test
+    public void loopbackClusterTest() throws Exception {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+        };
+
+        int nodeCount = 4;
+        int rounds = 3;
+        String[] ids = {"a", "b", "c"};
+        Map<String, AtomicInteger> upstreamCalls = new ConcurrentHashMap<>();
+        try (LoopbackCluster<String> cluster = new LoopbackCluster<>(nodeCount, config,
+                SnapshotSerializer.javaSerialization(), 2000)) {
+            for (String id : ids) {
+                upstreamCalls.put(id, new AtomicInteger());
+                cluster.registerSupplier(id, () -> id + upstreamCalls.get(id).incrementAndGet());
+            }
+
+            // every node gets every id each TTL, but upstream is called once per id per TTL, by its leader
+            for (int round = 1; round <= rounds; round++) {
+                for (int node = 0; node < nodeCount; node++) {
+                    for (String id : ids) {
+                        assertEquals(id + round, cluster.getManager(node).get(id));
+                    }
+                }
+                Thread.sleep(1100);
+            }
+            for (String id : ids) {
+                assertEquals(rounds, upstreamCalls.get(id).get());
+            }
+            long nodeUpstreamCalls = 0;
+            long peerResults = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                nodeUpstreamCalls += cluster.getNode(node).getUpstreamCalls();
+                peerResults += cluster.getNode(node).getPeerResults();
+            }
+            assertEquals((long) rounds * ids.length, nodeUpstreamCalls);
+            assertEquals((long) rounds * ids.length * (nodeCount - 1), peerResults);
+
+            // when the leader is down, its peers fetch locally instead of failing
+            int leader = cluster.getLeaderIndex("a");
+            int peer = (leader + 1) % nodeCount;
+            cluster.stopNode(leader);
+            assertEquals("a" + (rounds + 1), cluster.getManager(peer).get("a"));
+            assertEquals(1, cluster.getNode(peer).getPeerFallbacks());
+        }
+    }
+
+    @Test
+    public void badPeerResponseTest() throws Exception {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 1000;
+            }
+        };
+
+        // a "leader" that answers OK with a bad length, then OK with bytes that do not deserialize
+        try (ServerSocket badLeader = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread server = new Thread(() -> {
+                for (int length : new int[]{-1, 3}) {
+                    try (Socket socket = badLeader.accept()) {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        in.readInt();
+                        in.readUTF();
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        out.writeByte(0);
+                        out.writeInt(length);
+                        out.write(new byte[]{1, 2, 3});
+                        out.flush();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            RefreshCoordinator coordinator = new RefreshCoordinator() {
+                @Override
+                public String getLocalNodeId() {
+                    return "local";
+                }
+
+                @Override
+                public String getLeader(String supplierId) {
+                    return "bad";
+                }
+
+                @Override
+                public InetSocketAddress getAddress(String nodeId) {
+                    return (InetSocketAddress) badLeader.getLocalSocketAddress();
+                }
+            };
+            CachingSupplierManager<String> manager = new CachingSupplierManager<>(config);
+            try (ClusterRefresh<String> node = new ClusterRefresh<>(manager, coordinator,
+                    SnapshotSerializer.javaSerialization(), new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                    2000)) {
+                node.registerSupplier("a", config, () -> "local");
+                node.registerSupplier("b", config, () -> "local");
+
+                // neither response fails the caller: both fall back to a local fetch
+                assertEquals("local", manager.get("a"));
+                assertEquals("local", manager.get("b"));
+                assertEquals(2, node.getPeerFallbacks());
+                assertEquals(0, node.getPeerResults());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.marvinware;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostSingleFlightSupplierTest {
+
+    @Test
+    public void multiProcessTest(@TempDir Path dir) throws Exception {
+        int processCount = 3;
+        long startAt = System.currentTimeMillis() + 5000;
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+        // separate JVMs, each with its own manager, all get() the same supplier id at the same moment
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < processCount; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Child.class.getName(), dir.toString(), Long.toString(startAt))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+        List<String> results = new ArrayList<>();
+        for (Process process : processes) {
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+            results.add(new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim());
+        }
+
+        // one process ran the supplier, and the others got its result
+        List<String> calls = Files.readAllLines(dir.resolve("calls.log"));
+        assertEquals(1, calls.size());
+        for (String result : results) {
+            assertEquals("value-" + calls.get(0), result);
+        }
+    }
+
+    @Test
+    public void invalidateAndRefreshTest(@TempDir Path dir) throws Exception {
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return 60000;
+            }
+
+            @Override
+            public String getHostCoordinationDirectory() {
+                return dir.toString();
+            }
+        };
+
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        CachingSupplierManager<Integer> manager = new CachingSupplierManager<>(config);
+        manager.registerSupplier("changing", config, upstreamCalls::incrementAndGet,
+                SnapshotSerializer.javaSerialization());
+        assertEquals(1, manager.get("changing"));
+
+        // the shared result is still fresh, but an invalidation or refresh goes upstream
+        manager.invalidate("changing");
+        assertEquals(2, manager.get("changing"));
+        assertEquals(3, manager.refresh("changing").get(5, TimeUnit.SECONDS));
+        // the refresh future completes just before the new result is cached
+        while (manager.getCachingSupplier("changing").getState() == CachingSupplier.SupplierState.fetching) {
+            Thread.sleep(1);
+        }
+        assertEquals(3, manager.get("changing"));
+
+        // another process on the host reads the result of the forced run
+        HostSingleFlightSupplier<Integer> otherProcess = new HostSingleFlightSupplier<>(dir, "changing", config,
+                upstreamCalls::incrementAndGet, SnapshotSerializer.javaSerialization());
+        assertEquals(3, otherProcess.get());
+        assertEquals(3, upstreamCalls.get());
+    }
+
+    @Test
+    public void configReloadTest(@TempDir Path dir) {
+        AtomicLong ttl = new AtomicLong(60000);
+        CachingSupplierConfig config = new CachingSupplierConfig() {
+            @Override
+            public long getCachedResultsTTL() {
+                return ttl.get();
+            }
+        };
+
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        HostSingleFlightSupplier<Integer> first = new HostSingleFlightSupplier<>(dir, "reloaded", config,
+                upstreamCalls::incrementAndGet, SnapshotSerializer.javaSerialization());
+        HostSingleFlightSupplier<Integer> second = new HostSingleFlightSupplier<>(dir, "reloaded", config,
+                upstreamCalls::incrementAndGet, SnapshotSerializer.javaSerialization());
+        assertEquals(1, first.get());
+        assertEquals(1, second.get());
+
+        // a shorter TTL applies to the next get(), not only to suppliers created after it
+        ttl.set(-1);
+        assertEquals(2, second.get());
+        assertEquals(1, second.getSharedResults());
+        assertEquals(1, second.getUpstreamCalls());
+    }
+
+    /**
+     * One process of the test: waits for the start time, then prints the result of get().
+     */
+    public static class Child {
+        public static void main(String[] args) throws Exception {
+            Path dir = Path.of(args[0]);
+            long startAt = Long.parseLong(args[1]);
+            CachingSupplierConfig config = new CachingSupplierConfig() {
+                @Override
+                public long getCachedResultsTTL() {
+                    return 60000;
+                }
+
+                @Override
+                public String getHostCoordinationDirectory() {
+                    return dir.resolve("leases").toString();
+                }
+            };
+
+            CachingSupplierManager<String> manager = new CachingSupplierManager<>(config);
+            manager.registerSupplier("shared", config, () -> {
+                long pid = ProcessHandle.current().pid();
+                try {
+                    Files.write(dir.resolve("calls.log"), List.of(Long.toString(pid)), StandardOpenOption.CREATE,
+                            StandardOpenOption.APPEND);
+                    Thread.sleep(500);
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "value-" + pid;
+            }, SnapshotSerializer.javaSerialization());
+
+            while (System.currentTimeMillis() < startAt) {
+                Thread.sleep(1);
+            }
+            System.out.println(manager.get("shared"));
+            System.exit(0);
+        }
+    }
+}
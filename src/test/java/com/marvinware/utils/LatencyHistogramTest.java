@@ -0,0 +1,65 @@
+package com.marvinware.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketBoundsTest() {
+        for (long v : new long[] {0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(v);
+            long highest = LatencyHistogram.highestEquivalentValue(index);
+            assertTrue(highest >= v, "value " + v);
+            assertTrue(highest - v <= v / 16, "value " + v);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestEquivalentValue(index - 1) < v, "value " + v);
+            }
+        }
+    }
+
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v * 1000L);
+        }
+        histogram.record(-1L);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+        assertEquals(1000L, snapshot.getTotalCount());
+        assertEquals(500000.0, snapshot.getValueAtPercentile(50.0), 500000.0 / 16);
+        assertEquals(990000.0, snapshot.getValueAtPercentile(99.0), 990000.0 / 16);
+        assertEquals(1000000.0, snapshot.getValueAtPercentile(100.0), 1000000.0 / 16);
+
+        assertEquals(0L, histogram.snapshot(false).getTotalCount());
+        assertEquals(0L, histogram.snapshot(false).getValueAtPercentile(99.0));
+    }
+
+    @Test
+    public void concurrentRecordTest() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threadCount = 8;
+        int recordsPerThread = 100000;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            // the same value from every thread, like cache hits, all land in one bucket
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                    histogram.record(250L);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+        assertEquals((long) threadCount * recordsPerThread, snapshot.getTotalCount());
+        assertEquals(255L, snapshot.getValueAtPercentile(50.0));
+        assertEquals(0L, histogram.snapshot(false).getTotalCount());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.marvinware.utils;
+
+import com.marvinware.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerWheelTest {
+
+    @Test
+    public void fireTest() throws InterruptedException {
+        Ticker ticker = Ticker.systemTicker();
+        try (TimerWheel timerWheel = new TimerWheel("TimerWheelTest", ticker, 5L, TimeUnit.MILLISECONDS)) {
+            // delays past one turn of the bottom level (64 ticks) exercise the cascade
+            int count = 2000;
+            CountDownLatch fired = new CountDownLatch(count);
+            AtomicInteger early = new AtomicInteger();
+            AtomicLong maxLateNanos = new AtomicLong();
+            Random r = new Random(7);
+            for (int i = 0; i < count; i++) {
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos(r.nextInt(1200));
+                long deadline = ticker.read() + delayNanos;
+                timerWheel.schedule(() -> {
+                    long late = ticker.read() - deadline;
+                    if (late < 0L) {
+                        early.incrementAndGet();
+                    }
+                    maxLateNanos.accumulateAndGet(late, Math::max);
+                    fired.countDown();
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            AtomicInteger cancelledRuns = new AtomicInteger();
+            timerWheel.schedule(cancelledRuns::incrementAndGet, 50, TimeUnit.MILLISECONDS).cancel();
+
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertEquals(0, early.get());
+            assertTrue(maxLateNanos.get() < TimeUnit.MILLISECONDS.toNanos(200), "late " + maxLateNanos.get());
+            assertEquals(0, cancelledRuns.get());
+        }
+    }
+
+    @Test
+    public void idleThreadTest() throws InterruptedException {
+        String name = "TimerWheelTest-idle";
+        try (TimerWheel timerWheel = new TimerWheel(name, Ticker.systemTicker(), 5L, TimeUnit.MILLISECONDS)) {
+            // no thread until something is scheduled
+            assertFalse(isThreadAlive(name));
+            CountDownLatch fired = new CountDownLatch(2);
+            timerWheel.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+            assertTrue(isThreadAlive(name));
+
+            // the thread ends once the wheel has been idle for a while, and the next schedule starts a new one
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (isThreadAlive(name) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(isThreadAlive(name));
+            timerWheel.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static boolean isThreadAlive(String name) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals(name) && t.isAlive());
+    }
+}